@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.VMOutOfMemoryException;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the chunk sizes of ArrayReference GetValues and SetValues commands,
+ * and the number of chunks kept in flight while streaming, for one VM.
+ * <p>
+ * Starts from the known safe sizes and adapts them per operation and component type:
+ * the throughput of full chunks is measured for each power of two size, and the size
+ * moves to the better neighbour, halving when a chunk takes too long to arrive.
+ * The size never exceeds the limits of the VM implementation, and a chunk failing
+ * with an error lowers that limit.
+ */
+class ArrayChunking {
+    static final int MIN_CHUNK_SIZE = 1024;
+    // the initial size, safe for all known VMs
+    private static final int DEFAULT_CHUNK_SIZE = 32_768;
+    // even without a VM limitation, larger chunks only make the replies huge
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    private static final int MIN_IN_FLIGHT = 2;
+    private static final int DEFAULT_IN_FLIGHT = 4;
+    private static final int MAX_IN_FLIGHT = 8;
+
+    // chunks taking longer are split to keep the UI responsive on slow links
+    private static final long SLOW_CHUNK_NANOS = 1_000_000_000L;
+    // chunks faster than this are dominated by the round trip, more of them are kept in flight
+    private static final long FAST_CHUNK_NANOS = 10_000_000L;
+    // a neighbour size must be this much better to move to it
+    private static final double MIN_GAIN = 1.1;
+    private static final double EMA_WEIGHT = 0.3;
+
+    private final Tracer tracer;
+    private final Supplier<String> vmName;
+    private volatile Boolean isAndroid = null;
+
+    // synchronized (this)
+    private final Map<Integer, Stats> stats = new HashMap<>();
+
+    private static class Stats {
+        int chunkSize;
+        int ceiling;
+        int inFlight = DEFAULT_IN_FLIGHT;
+        // elements per nanosecond, by log2 of the chunk size
+        final double[] throughput = new double[32];
+
+        Stats(int ceiling) {
+            this.ceiling = ceiling;
+            this.chunkSize = Math.min(DEFAULT_CHUNK_SIZE, ceiling);
+        }
+    }
+
+    /**
+     * @param vmName the name of the VM implementation, read on first use
+     */
+    ArrayChunking(Tracer tracer, Supplier<String> vmName) {
+        this.tracer = tracer;
+        this.vmName = vmName;
+    }
+
+    int chunkSize(boolean set, int componentTag) {
+        synchronized (this) {
+            return stats(set, componentTag).chunkSize;
+        }
+    }
+
+    int maxInFlight(boolean set, int componentTag) {
+        synchronized (this) {
+            return stats(set, componentTag).inFlight;
+        }
+    }
+
+    /**
+     * Records the time a chunk took to arrive: for pipelined chunks the time since the previous
+     * reply, otherwise the time from sending the command to receiving its reply.
+     */
+    void chunkCompleted(boolean set, int componentTag, int elements, long nanos) {
+        synchronized (this) {
+            Stats s = stats(set, componentTag);
+            if (elements < s.chunkSize) {
+                // tails of the regions say nothing about the chunk size
+                return;
+            }
+            int bucket = log2(elements);
+            double throughput = (double) elements / Math.max(nanos, 1);
+            s.throughput[bucket] = s.throughput[bucket] == 0
+                    ? throughput
+                    : s.throughput[bucket] * (1 - EMA_WEIGHT) + throughput * EMA_WEIGHT;
+
+            int oldSize = s.chunkSize;
+            if (nanos > SLOW_CHUNK_NANOS) {
+                s.chunkSize = Math.max(MIN_CHUNK_SIZE, s.chunkSize / 2);
+                s.inFlight = Math.min(MAX_IN_FLIGHT, s.inFlight + 1);
+            } else {
+                double current = s.throughput[bucket];
+                double up = s.throughput[bucket + 1];
+                double down = bucket > 0 ? s.throughput[bucket - 1] : 0;
+                if (s.chunkSize * 2 <= s.ceiling && (up == 0 || up > current * MIN_GAIN)) {
+                    s.chunkSize *= 2;
+                } else if (s.chunkSize / 2 >= MIN_CHUNK_SIZE && down > current * MIN_GAIN) {
+                    s.chunkSize /= 2;
+                }
+                if (nanos < FAST_CHUNK_NANOS) {
+                    s.inFlight = Math.min(MAX_IN_FLIGHT, s.inFlight + 1);
+                } else {
+                    s.inFlight = Math.max(MIN_IN_FLIGHT, s.inFlight - 1);
+                }
+            }
+            if (s.chunkSize != oldSize) {
+                tracer.trace(VirtualMachine.TRACE_OBJREFS, () -> "Array " + (set ? "set" : "get") +
+                        " chunk size for " + (char) componentTag + ": " + oldSize + " -> " + s.chunkSize);
+            }
+        }
+    }
+
+    /**
+     * Records that a chunk failed with an error which may be caused by its size.
+     *
+     * @return true if the chunk should be retried in smaller parts
+     */
+    boolean chunkFailed(boolean set, int componentTag, int elements, Throwable error) {
+        Throwable cause = AsyncUtils.unwrap(error);
+        boolean sizeError = cause instanceof VMOutOfMemoryException ||
+                JDWPException.isOfType(cause, JDWP.Error.INTERNAL);
+        if (!sizeError || elements <= MIN_CHUNK_SIZE) {
+            return false;
+        }
+        synchronized (this) {
+            Stats s = stats(set, componentTag);
+            s.ceiling = Math.max(MIN_CHUNK_SIZE, Math.min(s.ceiling, Integer.highestOneBit(elements) / 2));
+            s.chunkSize = Math.min(s.chunkSize, s.ceiling);
+        }
+        tracer.trace(VirtualMachine.TRACE_OBJREFS, () -> "Array " + (set ? "set" : "get") + " of " + elements +
+                " elements failed: " + cause + ", retrying in smaller chunks");
+        return true;
+    }
+
+    private Stats stats(boolean set, int componentTag) {
+        boolean reference = componentTag == JDWP.Tag.OBJECT || componentTag == JDWP.Tag.ARRAY;
+        int key = (set ? 0x10000 : 0) | (reference ? JDWP.Tag.OBJECT : componentTag);
+        return stats.computeIfAbsent(key, k -> new Stats(ceiling(set, reference)));
+    }
+
+    private int ceiling(boolean set, boolean reference) {
+        if (isAndroid()) {
+            // Android VM has a limitation when writing reference values (global buffer size is 51200)
+            // (see https://youtrack.jetbrains.com/issue/IDEA-366896).
+            // We don't want to differentiate reference/primitive values and ignore changes of the default value.
+            //
+            // Note that Android versions before 5 (Art Runtime introduction) had really tiny socket buffer (8k bytes),
+            // but we ignore this fact because it's completely outdated
+            // (see https://issuetracker.google.com/issues/73584940 and https://youtrack.jetbrains.com/issue/KTIJ-10233).
+            return set ? DEFAULT_CHUNK_SIZE : MAX_CHUNK_SIZE;
+        } else {
+            // HotSpot's JDWP implementation has a limitation when reading reference values,
+            // controlled by MaxJNILocalCapacity property with a default value of 65536
+            // (see https://youtrack.jetbrains.com/issue/IDEA-366875).
+            // We ignore changes of the default value.
+            return !set && reference ? DEFAULT_CHUNK_SIZE : MAX_CHUNK_SIZE;
+        }
+    }
+
+    private boolean isAndroid() {
+        Boolean android = isAndroid;
+        if (android == null) {
+            android = vmName.get().toLowerCase(Locale.ROOT).contains("dalvik");
+            isAndroid = android;
+        }
+        return android;
+    }
+
+    private static int log2(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+}
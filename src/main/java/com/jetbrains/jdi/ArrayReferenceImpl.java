@@ -38,15 +38,17 @@
 
 package com.jetbrains.jdi;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import com.sun.jdi.ArrayReference;
 import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.InternalException;
 import com.sun.jdi.InvalidTypeException;
 import com.sun.jdi.Method;
 import com.sun.jdi.Type;
@@ -158,9 +160,10 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
                 return CompletableFuture.completedFuture(Collections.emptyList());
             }
 
-            int maxChunkSize = getMaxChunkSizeForGetValues();
+            int maxChunkSize = vm.arrayChunking().chunkSize(false, componentTag());
+            ReplyTimer timer = new ReplyTimer();
             if (length <= maxChunkSize) {
-                return getValuesAsyncImpl(index, length);
+                return getValuesAsyncImpl(index, length, timer);
 
             } else {
                 //noinspection unchecked
@@ -169,7 +172,7 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
                 int already = 0;
                 while (already < length) {
                     int chunkSize = Math.min(maxChunkSize, length - already);
-                    chunks[chunkIdx++] = getValuesAsyncImpl(index + already, chunkSize);
+                    chunks[chunkIdx++] = getValuesAsyncImpl(index + already, chunkSize, timer);
                     already += chunkSize;
                 }
                 assert chunkIdx == chunks.length;
@@ -194,9 +197,44 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
         });
     }
 
-    private CompletableFuture<List<Value>> getValuesAsyncImpl(int index, int length) {
+    private CompletableFuture<List<Value>> getValuesAsyncImpl(int index, int length, ReplyTimer timer) {
+        int tag = componentTag();
         return JDWP.ArrayReference.GetValues.processAsync(vm, this, index, length)
-                .thenApply(r -> cast(r.values));
+                .handle((r, throwable) -> {
+                    if (throwable == null) {
+                        vm.arrayChunking().chunkCompleted(false, tag, length, timer.sinceLastReply());
+                        return CompletableFuture.completedFuture(ArrayReferenceImpl.<List<Value>>cast(r.values));
+                    }
+                    if (vm.arrayChunking().chunkFailed(false, tag, length, throwable)) {
+                        int half = length / 2;
+                        return getValuesAsyncImpl(index, half, timer).thenCombine(
+                                getValuesAsyncImpl(index + half, length - half, timer), ArrayReferenceImpl::concat);
+                    }
+                    return CompletableFuture.<List<Value>>failedFuture(AsyncUtils.unwrap(throwable));
+                })
+                .thenCompose(f -> f);
+    }
+
+    /**
+     * Times pipelined chunks by the interval between replies, as the sync paths do:
+     * the time since its own request includes the transfer of the chunks sent before it.
+     */
+    private static final class ReplyTimer {
+        private long previous = System.nanoTime();
+
+        synchronized long sinceLastReply() {
+            long now = System.nanoTime();
+            long res = now - previous;
+            previous = now;
+            return res;
+        }
+    }
+
+    private static List<Value> concat(List<Value> first, List<Value> second) {
+        List<Value> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
     }
 
     public List<Value> getValues(int index, int length) {
@@ -208,7 +246,7 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
             return Collections.emptyList();
         }
 
-        int maxChunkSize = getMaxChunkSizeForGetValues();
+        int maxChunkSize = vm.arrayChunking().chunkSize(false, componentTag());
         if (length <= maxChunkSize) {
             return getValuesImpl(index, length);
 
@@ -228,10 +266,473 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
     }
 
     private List<Value> getValuesImpl(int index, int length) {
+        int tag = componentTag();
+        long start = System.nanoTime();
+        try {
+            List<Value> values = cast(JDWP.ArrayReference.GetValues.process(vm, this, index, length).values);
+            vm.arrayChunking().chunkCompleted(false, tag, length, System.nanoTime() - start);
+            return values;
+        } catch (JDWPException exc) {
+            RuntimeException jdiException = exc.toJDIException();
+            if (vm.arrayChunking().chunkFailed(false, tag, length, jdiException)) {
+                int half = length / 2;
+                return concat(getValuesImpl(index, half), getValuesImpl(index + half, length - half));
+            }
+            throw jdiException;
+        }
+    }
+
+    /*
+     * Typed access to arrays of primitives. The regions are decoded straight from
+     * the reply packets into Java arrays, no value mirror is created per element.
+     * A length of -1 means the rest of the array.
+     */
+
+    public boolean[] getBooleans(int index, int length) {
+        return (boolean[]) getPrimitives(JDWP.Tag.BOOLEAN, index, length);
+    }
+
+    public byte[] getBytes(int index, int length) {
+        return (byte[]) getPrimitives(JDWP.Tag.BYTE, index, length);
+    }
+
+    public char[] getChars(int index, int length) {
+        return (char[]) getPrimitives(JDWP.Tag.CHAR, index, length);
+    }
+
+    public short[] getShorts(int index, int length) {
+        return (short[]) getPrimitives(JDWP.Tag.SHORT, index, length);
+    }
+
+    public int[] getInts(int index, int length) {
+        return (int[]) getPrimitives(JDWP.Tag.INT, index, length);
+    }
+
+    public long[] getLongs(int index, int length) {
+        return (long[]) getPrimitives(JDWP.Tag.LONG, index, length);
+    }
+
+    public float[] getFloats(int index, int length) {
+        return (float[]) getPrimitives(JDWP.Tag.FLOAT, index, length);
+    }
+
+    public double[] getDoubles(int index, int length) {
+        return (double[]) getPrimitives(JDWP.Tag.DOUBLE, index, length);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<boolean[]> getBooleansAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.BOOLEAN, index, length).thenApply(a -> (boolean[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<byte[]> getBytesAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.BYTE, index, length).thenApply(a -> (byte[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<char[]> getCharsAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.CHAR, index, length).thenApply(a -> (char[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<short[]> getShortsAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.SHORT, index, length).thenApply(a -> (short[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<int[]> getIntsAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.INT, index, length).thenApply(a -> (int[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<long[]> getLongsAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.LONG, index, length).thenApply(a -> (long[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<float[]> getFloatsAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.FLOAT, index, length).thenApply(a -> (float[]) a);
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<double[]> getDoublesAsync(int index, int length) {
+        return getPrimitivesAsync(JDWP.Tag.DOUBLE, index, length).thenApply(a -> (double[]) a);
+    }
+
+    public void setBooleans(int index, boolean[] values) {
+        setPrimitives(JDWP.Tag.BOOLEAN, index, values, values.length);
+    }
+
+    public void setBytes(int index, byte[] values) {
+        setPrimitives(JDWP.Tag.BYTE, index, values, values.length);
+    }
+
+    public void setChars(int index, char[] values) {
+        setPrimitives(JDWP.Tag.CHAR, index, values, values.length);
+    }
+
+    public void setShorts(int index, short[] values) {
+        setPrimitives(JDWP.Tag.SHORT, index, values, values.length);
+    }
+
+    public void setInts(int index, int[] values) {
+        setPrimitives(JDWP.Tag.INT, index, values, values.length);
+    }
+
+    public void setLongs(int index, long[] values) {
+        setPrimitives(JDWP.Tag.LONG, index, values, values.length);
+    }
+
+    public void setFloats(int index, float[] values) {
+        setPrimitives(JDWP.Tag.FLOAT, index, values, values.length);
+    }
+
+    public void setDoubles(int index, double[] values) {
+        setPrimitives(JDWP.Tag.DOUBLE, index, values, values.length);
+    }
+
+    private void validatePrimitiveComponent(int tag) {
+        String componentSignature = arrayType().componentSignature();
+        if (componentSignature.length() != 1 || componentSignature.charAt(0) != tag) {
+            throw new IllegalArgumentException("Not an array of " +
+                    new JNITypeParser(String.valueOf((char) tag)).typeName() +
+                    ": " + arrayType().name());
+        }
+    }
+
+    private static Object newPrimitiveArray(int tag, int length) {
+        switch (tag) {
+            case JDWP.Tag.BOOLEAN: return new boolean[length];
+            case JDWP.Tag.BYTE: return new byte[length];
+            case JDWP.Tag.CHAR: return new char[length];
+            case JDWP.Tag.SHORT: return new short[length];
+            case JDWP.Tag.INT: return new int[length];
+            case JDWP.Tag.LONG: return new long[length];
+            case JDWP.Tag.FLOAT: return new float[length];
+            case JDWP.Tag.DOUBLE: return new double[length];
+            default: throw new InternalException("Not a primitive tag: " + tag);
+        }
+    }
+
+    private PacketStream enqueueGetPrimitives(int index, int length) {
+        PacketStream ps = new PacketStream(vm, JDWP.ArrayReference.COMMAND_SET,
+                                           JDWP.ArrayReference.GetValues.COMMAND);
+        ps.writeObjectRef(ref());
+        ps.writeInt(index);
+        ps.writeInt(length);
+        ps.send();
+        return ps;
+    }
+
+    private Object getPrimitives(int tag, int index, int length) {
+        validatePrimitiveComponent(tag);
+        if (length == -1) { // -1 means the rest of the array
+            length = length() - index;
+        }
+        validateArrayAccess(index, length);
+        Object result = newPrimitiveArray(tag, length);
+
+        // all chunks are requested before waiting for the first reply
+        int maxChunkSize = vm.arrayChunking().chunkSize(false, tag);
+        List<PacketStream> chunks = new ArrayList<>();
+        long previous = System.nanoTime();
+        for (int already = 0; already < length; already += maxChunkSize) {
+            chunks.add(enqueueGetPrimitives(index + already, Math.min(maxChunkSize, length - already)));
+        }
+        int already = 0;
+        for (PacketStream ps : chunks) {
+            int chunkSize = Math.min(maxChunkSize, length - already);
+            try {
+                ps.waitForReply();
+                // pipelined: a chunk takes the time since the previous reply
+                long now = System.nanoTime();
+                vm.arrayChunking().chunkCompleted(false, tag, chunkSize, now - previous);
+                previous = now;
+                ps.readPrimitiveArrayRegion(tag, result, already, chunkSize);
+            } catch (JDWPException exc) {
+                RuntimeException jdiException = exc.toJDIException();
+                if (!vm.arrayChunking().chunkFailed(false, tag, chunkSize, jdiException)) {
+                    throw jdiException;
+                }
+                getPrimitivesInto(tag, result, already, index + already, chunkSize);
+            }
+            already += chunkSize;
+        }
+        return result;
+    }
+
+    /**
+     * Fetches a region one command at a time, in halves if it fails.
+     */
+    private void getPrimitivesInto(int tag, Object result, int offset, int index, int length) {
+        PacketStream ps = enqueueGetPrimitives(index, length);
+        try {
+            ps.waitForReply();
+        } catch (JDWPException exc) {
+            RuntimeException jdiException = exc.toJDIException();
+            if (!vm.arrayChunking().chunkFailed(false, tag, length, jdiException)) {
+                throw jdiException;
+            }
+            int half = length / 2;
+            getPrimitivesInto(tag, result, offset, index, half);
+            getPrimitivesInto(tag, result, offset + half, index + half, length - half);
+            return;
+        }
+        ps.readPrimitiveArrayRegion(tag, result, offset, length);
+    }
+
+    private CompletableFuture<Object> getPrimitivesAsync(int tag, int index, int len) {
+        return lengthAsync().thenCompose(__ -> { // preload length
+            validatePrimitiveComponent(tag);
+            int length = len;
+            if (length == -1) { // -1 means the rest of the array
+                length = length() - index;
+            }
+            validateArrayAccess(index, length);
+            Object result = newPrimitiveArray(tag, length);
+
+            int maxChunkSize = vm.arrayChunking().chunkSize(false, tag);
+            List<CompletableFuture<?>> chunks = new ArrayList<>();
+            ReplyTimer timer = new ReplyTimer();
+            for (int already = 0; already < length; already += maxChunkSize) {
+                int chunkSize = Math.min(maxChunkSize, length - already);
+                // chunks fill disjoint parts of the result
+                chunks.add(getPrimitivesIntoAsync(tag, result, already, index + already, chunkSize, timer));
+            }
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(___ -> result);
+        });
+    }
+
+    private CompletableFuture<Void> getPrimitivesIntoAsync(int tag, Object result, int offset, int index, int length,
+                                                           ReplyTimer timer) {
+        PacketStream ps = enqueueGetPrimitives(index, length);
+        return ps.readReply(p -> {
+                    ps.readPrimitiveArrayRegion(tag, result, offset, length);
+                    return null;
+                })
+                .handle((__, throwable) -> {
+                    if (throwable == null) {
+                        vm.arrayChunking().chunkCompleted(false, tag, length, timer.sinceLastReply());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (vm.arrayChunking().chunkFailed(false, tag, length, throwable)) {
+                        int half = length / 2;
+                        return CompletableFuture.allOf(
+                                getPrimitivesIntoAsync(tag, result, offset, index, half, timer),
+                                getPrimitivesIntoAsync(tag, result, offset + half, index + half, length - half, timer));
+                    }
+                    return CompletableFuture.<Void>failedFuture(AsyncUtils.unwrap(throwable));
+                })
+                .thenCompose(f -> f);
+    }
+
+    private void setPrimitives(int tag, int index, Object values, int length) {
+        validatePrimitiveComponent(tag);
+        validateArrayAccess(index, length);
+
+        int maxChunkSize = vm.arrayChunking().chunkSize(true, tag);
+        List<PacketStream> chunks = new ArrayList<>();
+        long previous = System.nanoTime();
+        for (int already = 0; already < length; already += maxChunkSize) {
+            chunks.add(enqueueSetPrimitives(tag, index + already, values, already,
+                                            Math.min(maxChunkSize, length - already)));
+        }
+        int already = 0;
+        for (PacketStream ps : chunks) {
+            int chunkSize = Math.min(maxChunkSize, length - already);
+            try {
+                ps.waitForReply();
+                // pipelined: a chunk takes the time since the previous reply
+                long now = System.nanoTime();
+                vm.arrayChunking().chunkCompleted(true, tag, chunkSize, now - previous);
+                previous = now;
+            } catch (JDWPException exc) {
+                RuntimeException jdiException = exc.toJDIException();
+                if (!vm.arrayChunking().chunkFailed(true, tag, chunkSize, jdiException)) {
+                    throw jdiException;
+                }
+                setPrimitivesFrom(tag, index + already, values, already, chunkSize);
+            }
+            already += chunkSize;
+        }
+    }
+
+    private PacketStream enqueueSetPrimitives(int tag, int index, Object values, int offset, int length) {
+        PacketStream ps = new PacketStream(vm, JDWP.ArrayReference.COMMAND_SET,
+                                           JDWP.ArrayReference.SetValues.COMMAND);
+        ps.writeObjectRef(ref());
+        ps.writeInt(index);
+        ps.writePrimitiveArrayRegion(tag, values, offset, length);
+        ps.send();
+        return ps;
+    }
+
+    /**
+     * Sets a region one command at a time, in halves if it fails.
+     */
+    private void setPrimitivesFrom(int tag, int index, Object values, int offset, int length) {
         try {
-            return cast(JDWP.ArrayReference.GetValues.process(vm, this, index, length).values);
+            enqueueSetPrimitives(tag, index, values, offset, length).waitForReply();
         } catch (JDWPException exc) {
-            throw exc.toJDIException();
+            RuntimeException jdiException = exc.toJDIException();
+            if (!vm.arrayChunking().chunkFailed(true, tag, length, jdiException)) {
+                throw jdiException;
+            }
+            int half = length / 2;
+            setPrimitivesFrom(tag, index, values, offset, half);
+            setPrimitivesFrom(tag, index + half, values, offset + half, length - half);
+        }
+    }
+
+    /**
+     * Receives the chunks of a streamed array region, in order.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer<T> {
+        /**
+         * @param index the array index of the first element of the chunk
+         * @return false to stop the streaming
+         */
+        boolean accept(int index, T chunk);
+    }
+
+    /**
+     * Streams the array region to the consumer chunk by chunk, keeping only a few
+     * chunk requests in flight (see {@link ArrayChunking}), so that arrays of any size are processed in constant memory.
+     * The consumer is called on the JDI async thread and should not block.
+     * A length of -1 means the rest of the array.
+     *
+     * @return a future completed when all chunks are consumed or the consumer stopped,
+     *         cancelling it stops the streaming
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<Void> forEachChunkAsync(int index, int length, ChunkConsumer<? super List<Value>> consumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        lengthAsync().thenAccept(__ -> {
+            int len = length == -1 ? length() - index : length;
+            validateArrayAccess(index, len);
+            ReplyTimer timer = new ReplyTimer();
+            new ChunkStream<>(index, len, vm.arrayChunking(), componentTag(),
+                              (chunkIndex, chunkSize) -> getValuesAsyncImpl(chunkIndex, chunkSize, timer),
+                              consumer, done).start();
+        }).exceptionally(throwable -> {
+            done.completeExceptionally(AsyncUtils.unwrap(throwable));
+            return null;
+        });
+        return done;
+    }
+
+    /**
+     * Same as {@link #forEachChunkAsync} for arrays of primitives, the chunks are
+     * Java primitive arrays of the component type, e.g. int[] for an int array.
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<Void> forEachPrimitiveChunkAsync(int index, int length, ChunkConsumer<Object> consumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        lengthAsync().thenAccept(__ -> {
+            int len = length == -1 ? length() - index : length;
+            validateArrayAccess(index, len);
+            int tag = arrayType().componentSignature().charAt(0);
+            validatePrimitiveComponent(tag);
+            ReplyTimer timer = new ReplyTimer();
+            new ChunkStream<>(index, len, vm.arrayChunking(), tag,
+                              (chunkIndex, chunkSize) -> {
+                                  Object chunk = newPrimitiveArray(tag, chunkSize);
+                                  return getPrimitivesIntoAsync(tag, chunk, 0, chunkIndex, chunkSize, timer)
+                                          .thenApply(___ -> chunk);
+                              },
+                              consumer, done).start();
+        }).exceptionally(throwable -> {
+            done.completeExceptionally(AsyncUtils.unwrap(throwable));
+            return null;
+        });
+        return done;
+    }
+
+    @FunctionalInterface
+    private interface ChunkFetcher<T> {
+        CompletableFuture<T> fetch(int index, int length);
+    }
+
+    /**
+     * Sliding window of chunk requests: new chunks are requested
+     * each time the oldest one is handed to the consumer.
+     * The chunk size and the window follow the adaptive {@link ArrayChunking}.
+     */
+    private static class ChunkStream<T> {
+        private final int index;
+        private final int length;
+        private final ArrayChunking chunking;
+        private final int componentTag;
+        private final ChunkFetcher<T> fetcher;
+        private final ChunkConsumer<? super T> consumer;
+        private final CompletableFuture<Void> done;
+        // only touched by the callback of the previous chunk
+        private final ArrayDeque<CompletableFuture<T>> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<Integer> inFlightSizes = new ArrayDeque<>();
+        private int requested = 0; // elements
+        private int consumed = 0;  // elements
+
+        ChunkStream(int index, int length, ArrayChunking chunking, int componentTag,
+                    ChunkFetcher<T> fetcher, ChunkConsumer<? super T> consumer, CompletableFuture<Void> done) {
+            this.index = index;
+            this.length = length;
+            this.chunking = chunking;
+            this.componentTag = componentTag;
+            this.fetcher = fetcher;
+            this.consumer = consumer;
+            this.done = done;
+        }
+
+        void start() {
+            requestMore();
+            consumeNext();
+        }
+
+        private void requestMore() {
+            int window = chunking.maxInFlight(false, componentTag);
+            // the returned future may have been cancelled by the caller
+            while (!done.isDone() && inFlight.size() < window && requested < length) {
+                int size = Math.min(chunking.chunkSize(false, componentTag), length - requested);
+                inFlight.add(fetcher.fetch(index + requested, size));
+                inFlightSizes.add(size);
+                requested += size;
+            }
+        }
+
+        private void consumeNext() {
+            CompletableFuture<T> next = inFlight.poll();
+            if (next == null) {
+                done.complete(null);
+                return;
+            }
+            int size = inFlightSizes.poll();
+            next.whenComplete((chunk, throwable) -> {
+                if (done.isDone()) {
+                    // cancelled, the chunk is dropped
+                    return;
+                }
+                if (throwable != null) {
+                    done.completeExceptionally(AsyncUtils.unwrap(throwable));
+                    return;
+                }
+                boolean proceed;
+                try {
+                    proceed = consumer.accept(index + consumed, chunk);
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                    return;
+                }
+                consumed += size;
+                if (proceed) {
+                    requestMore();
+                    consumeNext();
+                } else {
+                    // replies of the chunks still in flight are dropped
+                    done.complete(null);
+                }
+            });
         }
     }
 
@@ -284,7 +785,7 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
                         (srcIndex + length - 1));
         }
 
-        int maxChunkSize = getMaxChunkSizeForSetValues();
+        int maxChunkSize = vm.arrayChunking().chunkSize(true, componentTag());
         int already = 0;
         while (already < length) {
             int chunkSize = Math.min(maxChunkSize, length - already);
@@ -324,44 +825,33 @@ public class ArrayReferenceImpl extends ObjectReferenceImpl
             }
         }
         if (somethingToSet) {
-            try {
-                JDWP.ArrayReference.SetValues.
-                    process(vm, this, index, setValues);
-            } catch (JDWPException exc) {
-                throw exc.toJDIException();
-            }
+            setValuesImpl(index, setValues, 0, length);
         }
     }
 
-    private boolean isAndroidVM() {
-        return vm.name().toLowerCase(Locale.ROOT).contains("dalvik");
+    private void setValuesImpl(int index, ValueImpl[] values, int offset, int length) {
+        int tag = componentTag();
+        ValueImpl[] chunk = offset == 0 && length == values.length
+                ? values
+                : Arrays.copyOfRange(values, offset, offset + length);
+        long start = System.nanoTime();
+        try {
+            JDWP.ArrayReference.SetValues.
+                process(vm, this, index, chunk);
+            vm.arrayChunking().chunkCompleted(true, tag, length, System.nanoTime() - start);
+        } catch (JDWPException exc) {
+            RuntimeException jdiException = exc.toJDIException();
+            if (!vm.arrayChunking().chunkFailed(true, tag, length, jdiException)) {
+                throw jdiException;
+            }
+            int half = length / 2;
+            setValuesImpl(index, values, offset, half);
+            setValuesImpl(index + half, values, offset + half, length - half);
+        }
     }
 
-    private int getMaxChunkSizeForGetValues() {
-        if (isAndroidVM()) {
-            return Integer.MAX_VALUE;
-        } else {
-            // HotSpot's JDWP implementation has a limitation when reading reference values,
-            // controlled by MaxJNILocalCapacity property with a default value of 65536
-            // (see https://youtrack.jetbrains.com/issue/IDEA-366875).
-            // We don't want to differentiate reference/primitive values and ignore changes of the default value.
-            return 32_768;
-        }
-    }
-
-    private int getMaxChunkSizeForSetValues() {
-        if (isAndroidVM()) {
-            // Android VM has a limitation when writing reference values (global buffer size is 51200)
-            // (see https://youtrack.jetbrains.com/issue/IDEA-366896).
-            // We don't want to differentiate reference/primitive values and ignore changes of the default value.
-            //
-            // Note that Android versions before 5 (Art Runtime introduction) had really tiny socket buffer (8k bytes),
-            // but we ignore this fact because it's completely outdated
-            // (see https://issuetracker.google.com/issues/73584940 and https://youtrack.jetbrains.com/issue/KTIJ-10233).
-            return 32_768;
-        } else {
-            return Integer.MAX_VALUE;
-        }
+    private int componentTag() {
+        return arrayType().componentSignature().charAt(0);
     }
 
     public String toString() {
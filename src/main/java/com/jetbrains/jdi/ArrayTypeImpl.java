@@ -90,7 +90,8 @@ public class ArrayTypeImpl extends ReferenceTypeImpl
         // arrays don't have methods
     }
 
-    public List<Method> allMethods() {
+    @Override
+    List<Method> collectAllMethods() {
         return new ArrayList<>(0);   // arrays don't have methods
     }
 
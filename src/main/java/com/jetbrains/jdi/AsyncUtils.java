@@ -33,6 +33,25 @@ public class AsyncUtils {
         }
     }
 
+    /**
+     * Waits for the future and rethrows its failure unwrapped,
+     * for synchronous methods built on top of asynchronous ones.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
     @FunctionalInterface
     public interface ThrowingSupplier<T> {
         T get() throws Exception;
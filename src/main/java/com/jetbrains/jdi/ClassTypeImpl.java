@@ -131,6 +131,10 @@ public class ClassTypeImpl extends InvokableTypeImpl
     }
 
     public List<ClassType> subclasses() {
+        List<ClassType> indexed = vm.typeHierarchy().directSubtypesIfUpToDate(this, ClassType.class);
+        if (indexed != null) {
+            return indexed;
+        }
         List<ClassType> subs = new ArrayList<>();
         vm.forEachClass(refType -> {
             if (refType instanceof ClassType) {
@@ -144,6 +148,10 @@ public class ClassTypeImpl extends InvokableTypeImpl
         return subs;
     }
 
+    public CompletableFuture<List<ClassType>> subclassesAsync() {
+        return vm.typeHierarchy().directSubtypesAsync(this, ClassType.class);
+    }
+
     public boolean isEnum() {
         ClassType superclass = superclass();
         return superclass != null && superclass.name().equals("java.lang.Enum");
@@ -43,7 +43,6 @@ import com.sun.jdi.LocalVariable;
 import com.sun.jdi.Location;
 import com.sun.jdi.VirtualMachine;
 
-import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -56,43 +55,160 @@ import java.util.stream.Collectors;
  */
 public class ConcreteMethodImpl extends MethodImpl {
 
+    private static final int[] EMPTY_ENTRIES = new int[0];
+
     /*
-     * A subset of the line number info that is softly cached
+     * A subset of the line number info that is softly cached.
+     * The line table is kept in parallel primitive arrays ordered by
+     * code index, Location mirrors are only created on request.
      */
     private static class SoftLocationXRefs {
-        final String stratumID;                        // The stratum of this information
-        final Map<Integer, List<Location>> lineMapper; // Maps line number to location(s)
-        final List<Location> lineLocations;            // List of locations ordered by code index
+        final String stratumID;        // The stratum of this information
+        final long[] codeIndexes;      // Code index of each entry, ascending
+        final int[] lineNumbers;       // Line number of each entry in this stratum
+        final int[] baseLineNumbers;   // Line number of each entry in the base stratum
+        final String[] sourceNames;    // Source name of each entry, null for the base stratum
+        final String[] sourcePaths;    // Source path of each entry, null for the base stratum
+        final int[] sortedLines;       // Line numbers in ascending order
+        final int[] lineEntries;       // Entry index for each element of sortedLines
 
         /*
          * Note: these do not necessarily correspond to
-         * the line numbers of the first and last elements
-         * in the lineLocations list. Use these only for bounds
-         * checking and with lineMapper.
+         * the line numbers of the first and last entries.
+         * Use these only for bounds checking.
          */
-        @SuppressWarnings("unused")
         final int lowestLine;
-        @SuppressWarnings("unused")
         final int highestLine;
 
-        SoftLocationXRefs(String stratumID, Map<Integer, List<Location>> lineMapper,
-                          List<Location> lineLocations, int lowestLine, int highestLine) {
+        SoftLocationXRefs(String stratumID, long[] codeIndexes, int[] lineNumbers,
+                          int[] baseLineNumbers, String[] sourceNames, String[] sourcePaths) {
             this.stratumID = stratumID;
-            this.lineMapper = Collections.unmodifiableMap(lineMapper);
-            this.lineLocations = Collections.unmodifiableList(lineLocations);
-            this.lowestLine = lowestLine;
-            this.highestLine = highestLine;
+            this.codeIndexes = codeIndexes;
+            this.lineNumbers = lineNumbers;
+            this.baseLineNumbers = baseLineNumbers;
+            this.sourceNames = sourceNames;
+            this.sourcePaths = sourcePaths;
+
+            /*
+             * Sort entries by line number, entries of the same line stay
+             * in code index order. Line and entry index are packed into
+             * a long to avoid boxing.
+             */
+            int count = lineNumbers.length;
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = ((long) lineNumbers[i] << 32) | i;
+            }
+            Arrays.sort(packed);
+            sortedLines = new int[count];
+            lineEntries = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedLines[i] = (int) (packed[i] >> 32);
+                lineEntries[i] = (int) packed[i];
+            }
+            lowestLine = count > 0 ? sortedLines[0] : -1;
+            highestLine = count > 0 ? sortedLines[count - 1] : -1;
+        }
+
+        int size() {
+            return codeIndexes.length;
+        }
+
+        long estimatedSize() {
+            // code index, line, base line, source name, source path and the line index
+            return 64 + size() * (isBase() ? 24L : 40L);
+        }
+
+        boolean isBase() {
+            return sourceNames == null;
+        }
+
+        /*
+         * Returns the entry with the greatest code index not above
+         * the given one. Code before the first entry maps to the first entry.
+         */
+        int entryOfCodeIndex(long codeIndex) {
+            int low = 0;
+            int high = codeIndexes.length - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (codeIndexes[mid] <= codeIndex) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        /*
+         * Returns the entries of the given line in code index order.
+         */
+        int[] entriesOfLine(int lineNumber) {
+            if (size() == 0 || lineNumber < lowestLine || lineNumber > highestLine) {
+                return EMPTY_ENTRIES;
+            }
+            // find the first occurrence of the line
+            int low = 0;
+            int high = sortedLines.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedLines[mid] < lineNumber) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < sortedLines.length && sortedLines[end] == lineNumber) {
+                end++;
+            }
+            return low == end ? EMPTY_ENTRIES : Arrays.copyOfRange(lineEntries, low, end);
+        }
+
+        LineInfo lineInfo(int entry, ReferenceTypeImpl declaringType) {
+            if (isBase()) {
+                return new BaseLineInfo(lineNumbers[entry], declaringType);
+            }
+            return new StratumLineInfo(stratumID, lineNumbers[entry],
+                                       sourceNames[entry], sourcePaths[entry]);
+        }
+    }
+
+    /*
+     * Read-only view over line table entries which creates
+     * Location mirrors on access.
+     */
+    private class LocationList extends AbstractList<Location> implements RandomAccess {
+        private final SoftLocationXRefs info;
+        private final int[] entries; // null means all entries
+
+        LocationList(SoftLocationXRefs info, int[] entries) {
+            this.info = info;
+            this.entries = entries;
+        }
+
+        @Override
+        public Location get(int index) {
+            return createLocation(info, entries == null ? index : entries[index]);
+        }
+
+        @Override
+        public int size() {
+            return entries == null ? info.size() : entries.length;
         }
     }
 
     private volatile Location location = null;
-    private volatile SoftReference<SoftLocationXRefs> softBaseLocationXRefsRef;
-    private volatile SoftReference<SoftLocationXRefs> softOtherLocationXRefsRef;
-    private volatile SoftReference<List<LocalVariable>> variablesRef = null;
+    private volatile MetadataCache.Entry<SoftLocationXRefs> softBaseLocationXRefsRef;
+    private volatile MetadataCache.Entry<SoftLocationXRefs> softOtherLocationXRefsRef;
+    private volatile MetadataCache.Entry<List<LocalVariable>> variablesRef = null;
     private volatile boolean absentVariableInformation = false;
     private volatile long firstIndex = -1;
     private volatile long lastIndex = -1;
-    private volatile SoftReference<byte[]> bytecodesRef = null;
+    private volatile MetadataCache.Entry<byte[]> bytecodesRef = null;
     private volatile int argSlotCount = -1;
 
     ConcreteMethodImpl(VirtualMachine vm, ReferenceTypeImpl declaringType,
@@ -110,46 +226,67 @@ public class ConcreteMethodImpl extends MethodImpl {
         return location;
     }
 
-    List<Location> sourceNameFilter(List<Location> list,
-                                    SDE.Stratum stratum,
-                                    String sourceName)
+    private LocationImpl createLocation(SoftLocationXRefs info, int entry) {
+        LocationImpl loc = new LocationImpl(virtualMachine(), this, info.codeIndexes[entry]);
+        loc.addBaseLineInfo(new BaseLineInfo(info.baseLineNumbers[entry], declaringType));
+        if (!info.isBase()) {
+            loc.addStratumLineInfo(info.lineInfo(entry, declaringType));
+        }
+        return loc;
+    }
+
+    /*
+     * Filters the given entries (null means all) by source name.
+     */
+    private List<Location> sourceNameFilter(SoftLocationXRefs info,
+                                            int[] entries,
+                                            String sourceName)
                             throws AbsentInformationException {
-        if (sourceName == null) {
-            return list;
-        } else {
-            /* needs sourceName filteration */
-            List<Location> locs = new ArrayList<>();
-            for (Location loc : list) {
-                if (((LocationImpl)loc).sourceName(stratum).equals(sourceName)) {
-                    locs.add(loc);
-                }
+        int count = entries == null ? info.size() : entries.length;
+        if (sourceName == null || count == 0) {
+            return new LocationList(info, entries);
+        }
+        /* needs sourceName filteration */
+        if (info.isBase()) {
+            // all base stratum entries share the source name of the declaring type
+            return declaringType.baseSourceName().equals(sourceName) ?
+                    new LocationList(info, entries) : Collections.emptyList();
+        }
+        int[] filtered = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int entry = entries == null ? i : entries[i];
+            String name = info.sourceNames[entry];
+            if (name == null) {
+                throw new AbsentInformationException();
+            }
+            if (name.equals(sourceName)) {
+                filtered[size++] = entry;
             }
-            return locs;
         }
+        return new LocationList(info, Arrays.copyOf(filtered, size));
     }
 
     List<Location> allLineLocations(SDE.Stratum stratum,
                                     String sourceName)
                             throws AbsentInformationException {
-        List<Location> lineLocations = getLocations(stratum).lineLocations;
+        SoftLocationXRefs info = getLocations(stratum);
 
-        if (lineLocations.size() == 0) {
+        if (info.size() == 0) {
             throw new AbsentInformationException();
         }
 
-        return Collections.unmodifiableList(
-            sourceNameFilter(lineLocations, stratum, sourceName));
+        return sourceNameFilter(info, null, sourceName);
     }
 
     CompletableFuture<List<Location>> allLineLocationsAsync(SDE.Stratum stratum, String sourceName) {
         return getLocationsAsync(stratum).thenApply(info -> {
-            List<Location> lineLocations = info.lineLocations;
-            if (lineLocations.size() == 0) {
+            if (info.size() == 0) {
                 throw new CompletionException(new AbsentInformationException());
             }
 
             try {
-                return Collections.unmodifiableList(sourceNameFilter(lineLocations, stratum, sourceName));
+                return sourceNameFilter(info, null, sourceName);
             } catch (AbsentInformationException e) {
                 throw new CompletionException(e);
             }
@@ -162,7 +299,7 @@ public class ConcreteMethodImpl extends MethodImpl {
                             throws AbsentInformationException {
         SoftLocationXRefs info = getLocations(stratum);
 
-        if (info.lineLocations.size() == 0) {
+        if (info.size() == 0) {
             throw new AbsentInformationException();
         }
 
@@ -170,20 +307,14 @@ public class ConcreteMethodImpl extends MethodImpl {
          * Find the locations which match the line number
          * passed in.
          */
-        List<Location> list = info.lineMapper.get(lineNumber);
-
-        if (list == null) {
-            list = new ArrayList<>(0);
-        }
-        return Collections.unmodifiableList(
-            sourceNameFilter(list, stratum, sourceName));
+        return sourceNameFilter(info, info.entriesOfLine(lineNumber), sourceName);
     }
 
     CompletableFuture<List<Location>> locationsOfLineAsync(SDE.Stratum stratum,
                                                            String sourceName,
                                                            int lineNumber) {
         return getLocationsAsync(stratum).thenApply(info -> {
-            if (info.lineLocations.size() == 0) {
+            if (info.size() == 0) {
                 throw new CompletionException(new AbsentInformationException());
             }
 
@@ -191,19 +322,19 @@ public class ConcreteMethodImpl extends MethodImpl {
              * Find the locations which match the line number
              * passed in.
              */
-            List<Location> list = info.lineMapper.get(lineNumber);
-
-            if (list == null) {
-                list = Collections.emptyList();
-            }
             try {
-                return Collections.unmodifiableList(sourceNameFilter(list, stratum, sourceName));
+                return sourceNameFilter(info, info.entriesOfLine(lineNumber), sourceName);
             } catch (AbsentInformationException e) {
                 throw new CompletionException(e);
             }
         });
     }
 
+    @Override
+    CompletableFuture<Void> prefetchLineTable() {
+        return getBaseLocationsAsync().thenAccept(info -> {});
+    }
+
     public Location locationOfCodeIndex(long codeIndex) {
         if (firstIndex == -1) {
             getBaseLocations();
@@ -232,16 +363,15 @@ public class ConcreteMethodImpl extends MethodImpl {
             throw new InternalError("Location with invalid code index");
         }
 
-        List<Location> lineLocations = getLocations(stratum).lineLocations;
+        SoftLocationXRefs info = getLocations(stratum);
 
         /*
          * Check for absent line numbers.
          */
-        if (lineLocations.size() == 0) {
+        if (info.size() == 0) {
             return super.codeIndexToLineInfo(stratum, codeIndex);
         }
 
-        Iterator<Location> iter = lineLocations.iterator();
         /*
          * Treat code before the beginning of the first line table
          * entry as part of the first line.  javac will generate
@@ -250,15 +380,7 @@ public class ConcreteMethodImpl extends MethodImpl {
          * scope to synthetic fields in the local class.  Same for
          * other language prolog code.
          */
-        LocationImpl bestMatch = (LocationImpl)iter.next();
-        while (iter.hasNext()) {
-            LocationImpl current = (LocationImpl)iter.next();
-            if (current.codeIndex() > codeIndex) {
-                break;
-            }
-            bestMatch = current;
-        }
-        return bestMatch.getLineInfo(stratum);
+        return info.lineInfo(info.entryOfCodeIndex(codeIndex), declaringType);
     }
 
     public List<LocalVariable> variables() throws AbsentInformationException {
@@ -289,8 +411,7 @@ public class ConcreteMethodImpl extends MethodImpl {
     }
 
     public byte[] bytecodes() {
-        byte[] bytecodes = (bytecodesRef == null) ? null :
-                                     bytecodesRef.get();
+        byte[] bytecodes = vm.metadataCache().get(bytecodesRef, MetadataCache.Category.BYTECODES);
         if (bytecodes == null) {
             try {
                 bytecodes = JDWP.Method.Bytecodes.
@@ -298,7 +419,8 @@ public class ConcreteMethodImpl extends MethodImpl {
             } catch (JDWPException exc) {
                 throw exc.toJDIException();
             }
-            bytecodesRef = vm.createSoftReference(bytecodes);
+            bytecodesRef = vm.metadataCache().replace(bytecodesRef, MetadataCache.Category.BYTECODES, declaringType,
+                                                  bytecodes, bytecodes.length);
         }
         /*
          * Arrays are always modifiable, so it is a little unsafe
@@ -309,12 +431,13 @@ public class ConcreteMethodImpl extends MethodImpl {
     }
 
     public CompletableFuture<byte[]> bytecodesAsync() {
-        byte[] bytecodes = (bytecodesRef == null) ? null : bytecodesRef.get();
+        byte[] bytecodes = vm.metadataCache().get(bytecodesRef, MetadataCache.Category.BYTECODES);
         if (bytecodes != null) {
             return CompletableFuture.completedFuture(bytecodes.clone());
         }
         return JDWP.Method.Bytecodes.processAsync(vm, declaringType, ref).thenApply(b -> {
-            bytecodesRef = vm.createSoftReference(b.bytes);
+            bytecodesRef = vm.metadataCache().replace(bytecodesRef, MetadataCache.Category.BYTECODES, declaringType,
+                                                  b.bytes, b.bytes.length);
             /*
              * Arrays are always modifiable, so it is a little unsafe
              * to return the cached bytecodes directly; instead, we
@@ -336,22 +459,39 @@ public class ConcreteMethodImpl extends MethodImpl {
             return getBaseLocations();
         }
         String stratumID = stratum.id();
-        SoftLocationXRefs info =
-            (softOtherLocationXRefsRef == null) ? null :
-               softOtherLocationXRefsRef.get();
+        SoftLocationXRefs info = vm.metadataCache().get(softOtherLocationXRefsRef,
+                                                        MetadataCache.Category.LINE_TABLE);
         if (info != null && info.stratumID.equals(stratumID)) {
             return info;
         }
+        return createStratumLocations(stratum, getBaseLocations());
+    }
 
-        List<Location> lineLocations = new ArrayList<>();
-        Map<Integer, List<Location>> lineMapper = new HashMap<>();
-        int lowestLine = -1;
-        int highestLine = -1;
+    private CompletableFuture<SoftLocationXRefs> getLocationsAsync(SDE.Stratum stratum) {
+        if (stratum.isJava()) {
+            return getBaseLocationsAsync();
+        }
+        String stratumID = stratum.id();
+        SoftLocationXRefs info = vm.metadataCache().get(softOtherLocationXRefsRef,
+                MetadataCache.Category.LINE_TABLE);
+        if (info != null && info.stratumID.equals(stratumID)) {
+            return CompletableFuture.completedFuture(info);
+        }
+        return getBaseLocationsAsync().thenApply(base -> createStratumLocations(stratum, base));
+    }
+
+    private SoftLocationXRefs createStratumLocations(SDE.Stratum stratum, SoftLocationXRefs base) {
+        String stratumID = stratum.id();
+        int count = base.size();
+        long[] codeIndexes = new long[count];
+        int[] lineNumbers = new int[count];
+        int[] baseLineNumbers = new int[count];
+        String[] sourceNames = new String[count];
+        String[] sourcePaths = new String[count];
+        int size = 0;
         SDE.LineStratum lastLineStratum = null;
-        SDE.Stratum baseStratum = declaringType.stratum(SDE.BASE_STRATUM_NAME);
-        for (Location lineLocation : getBaseLocations().lineLocations) {
-            LocationImpl loc = (LocationImpl) lineLocation;
-            int baseLineNumber = loc.lineNumber(baseStratum);
+        for (int i = 0; i < count; i++) {
+            int baseLineNumber = base.lineNumbers[i];
             SDE.LineStratum lineStratum =
                     stratum.lineStratum(declaringType, baseLineNumber);
 
@@ -367,102 +507,28 @@ public class ConcreteMethodImpl extends MethodImpl {
                     (!lineStratum.equals(lastLineStratum))) {
                 lastLineStratum = lineStratum;
 
-                // Remember the largest/smallest line number
-                if (lineNumber > highestLine) {
-                    highestLine = lineNumber;
-                }
-                if ((lineNumber < lowestLine) || (lowestLine == -1)) {
-                    lowestLine = lineNumber;
-                }
-
-                loc.addStratumLineInfo(
-                        new StratumLineInfo(stratumID,
-                                lineNumber,
-                                lineStratum.sourceName(),
-                                lineStratum.sourcePath()));
-
-                // Add to the location list
-                lineLocations.add(loc);
-
-                // Add to the line -> locations map
-                lineMapper.computeIfAbsent(lineNumber, k -> new ArrayList<>(1)).add(loc);
+                codeIndexes[size] = base.codeIndexes[i];
+                lineNumbers[size] = lineNumber;
+                baseLineNumbers[size] = baseLineNumber;
+                sourceNames[size] = lineStratum.sourceName();
+                sourcePaths[size] = lineStratum.sourcePath();
+                size++;
             }
         }
 
-        info = new SoftLocationXRefs(stratumID, lineMapper, lineLocations,
-                                     lowestLine, highestLine);
-        softOtherLocationXRefsRef = vm.createSoftReference(info);
+        SoftLocationXRefs info = new SoftLocationXRefs(stratumID,
+                Arrays.copyOf(codeIndexes, size),
+                Arrays.copyOf(lineNumbers, size),
+                Arrays.copyOf(baseLineNumbers, size),
+                Arrays.copyOf(sourceNames, size),
+                Arrays.copyOf(sourcePaths, size));
+        softOtherLocationXRefsRef = cacheLocations(softOtherLocationXRefsRef, info);
         return info;
     }
 
-    private CompletableFuture<SoftLocationXRefs> getLocationsAsync(SDE.Stratum stratum) {
-        if (stratum.isJava()) {
-            return getBaseLocationsAsync();
-        }
-        String stratumID = stratum.id();
-        SoftLocationXRefs info =
-                (softOtherLocationXRefsRef == null) ? null :
-                        softOtherLocationXRefsRef.get();
-        if (info != null && info.stratumID.equals(stratumID)) {
-            return CompletableFuture.completedFuture(info);
-        }
-        return declaringType.stratumAsync(SDE.BASE_STRATUM_NAME)
-                .thenCombine(getBaseLocationsAsync(), (baseStratum, softLocationXRefs) -> {
-                    List<Location> lineLocations = new ArrayList<>();
-                    Map<Integer, List<Location>> lineMapper = new HashMap<>();
-                    int lowestLine = -1;
-                    int highestLine = -1;
-                    SDE.LineStratum lastLineStratum = null;
-                    for (Location lineLocation : softLocationXRefs.lineLocations) {
-                        LocationImpl loc = (LocationImpl) lineLocation;
-                        int baseLineNumber = loc.lineNumber(baseStratum);
-                        SDE.LineStratum lineStratum =
-                                stratum.lineStratum(declaringType, baseLineNumber);
-
-                        if (lineStratum == null) {
-                            // location not mapped in this stratum
-                            continue;
-                        }
-
-                        int lineNumber = lineStratum.lineNumber();
-
-                        // remove unmapped and dup lines
-                        if ((lineNumber != -1) &&
-                                (!lineStratum.equals(lastLineStratum))) {
-                            lastLineStratum = lineStratum;
-
-                            // Remember the largest/smallest line number
-                            if (lineNumber > highestLine) {
-                                highestLine = lineNumber;
-                            }
-                            if ((lineNumber < lowestLine) || (lowestLine == -1)) {
-                                lowestLine = lineNumber;
-                            }
-
-                            loc.addStratumLineInfo(
-                                    new StratumLineInfo(stratumID,
-                                            lineNumber,
-                                            lineStratum.sourceName(),
-                                            lineStratum.sourcePath()));
-
-                            // Add to the location list
-                            lineLocations.add(loc);
-
-                            // Add to the line -> locations map
-                            lineMapper.computeIfAbsent(lineNumber, k -> new ArrayList<>(1)).add(loc);
-                        }
-                    }
-
-                    SoftLocationXRefs res = new SoftLocationXRefs(stratumID, lineMapper, lineLocations,
-                            lowestLine, highestLine);
-                    softOtherLocationXRefsRef = vm.createSoftReference(res);
-                    return res;
-                });
-    }
-
     private SoftLocationXRefs getBaseLocations() {
-        SoftLocationXRefs info = (softBaseLocationXRefsRef == null) ? null :
-                                     softBaseLocationXRefsRef.get();
+        SoftLocationXRefs info = vm.metadataCache().get(softBaseLocationXRefsRef,
+                                                        MetadataCache.Category.LINE_TABLE);
         if (info != null) {
             return info;
         }
@@ -478,15 +544,30 @@ public class ConcreteMethodImpl extends MethodImpl {
             throw exc.toJDIException();
         }
 
-        int count  = lntab.lines.length;
+        return createBaseLocations(lntab);
+    }
+
+    private CompletableFuture<SoftLocationXRefs> getBaseLocationsAsync() {
+        SoftLocationXRefs info = vm.metadataCache().get(softBaseLocationXRefsRef,
+                MetadataCache.Category.LINE_TABLE);
+        if (info != null) {
+            return CompletableFuture.completedFuture(info);
+        }
+
+        return JDWP.Method.LineTable.processAsync(vm, declaringType, ref)
+                .thenApply(this::createBaseLocations);
+    }
 
-        List<Location> lineLocations = new ArrayList<>(count);
-        Map<Integer, List<Location>>lineMapper = new HashMap<>();
-        int lowestLine = -1;
-        int highestLine = -1;
+    private SoftLocationXRefs createBaseLocations(JDWP.Method.LineTable lntab) {
+        JDWP.Method.LineTable.LineInfo[] lines = lntab.lines;
+        int count = lines.length;
+
+        long[] codeIndexes = new long[count];
+        int[] lineNumbers = new int[count];
+        int size = 0;
+        boolean sorted = true;
         for (int i = 0; i < count; i++) {
-            long bci = lntab.lines[i].lineCodeIndex;
-            int lineNumber = lntab.lines[i].lineNumber;
+            long bci = lines[i].lineCodeIndex;
 
             /*
              * Some compilers will point multiple consecutive
@@ -496,27 +577,38 @@ public class ConcreteMethodImpl extends MethodImpl {
              * to record only the last line entry at a particular
              * location.
              */
-            if ((i + 1 == count) || (bci != lntab.lines[i+1].lineCodeIndex)) {
-                // Remember the largest/smallest line number
-                if (lineNumber > highestLine) {
-                    highestLine = lineNumber;
-                }
-                if ((lineNumber < lowestLine) || (lowestLine == -1)) {
-                    lowestLine = lineNumber;
+            if ((i + 1 == count) || (bci != lines[i + 1].lineCodeIndex)) {
+                if (size > 0 && codeIndexes[size - 1] > bci) {
+                    sorted = false;
                 }
-                LocationImpl loc =
-                    new LocationImpl(virtualMachine(), this, bci);
-                loc.addBaseLineInfo(
-                    new BaseLineInfo(lineNumber, declaringType));
-
-                // Add to the location list
-                lineLocations.add(loc);
+                codeIndexes[size] = bci;
+                lineNumbers[size] = lines[i].lineNumber;
+                size++;
+            }
+        }
+        codeIndexes = Arrays.copyOf(codeIndexes, size);
+        lineNumbers = Arrays.copyOf(lineNumbers, size);
 
-                // Add to the line -> locations map
-                lineMapper.computeIfAbsent(lineNumber, k -> new ArrayList<>(1)).add(loc);
+        if (!sorted) {
+            // lookups by code index rely on the ascending order
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            long[] unsortedIndexes = codeIndexes;
+            int[] unsortedLines = lineNumbers;
+            Arrays.sort(order, Comparator.comparingLong(i -> unsortedIndexes[i]));
+            codeIndexes = new long[size];
+            lineNumbers = new int[size];
+            for (int i = 0; i < size; i++) {
+                codeIndexes[i] = unsortedIndexes[order[i]];
+                lineNumbers[i] = unsortedLines[order[i]];
             }
         }
 
+        SoftLocationXRefs info = new SoftLocationXRefs(SDE.BASE_STRATUM_NAME,
+                codeIndexes, lineNumbers, lineNumbers, null, null);
+
         /*
          * firstIndex, lastIndex, and startLocation need to be
          * retrieved only once since they are strongly referenced.
@@ -526,100 +618,31 @@ public class ConcreteMethodImpl extends MethodImpl {
             lastIndex = lntab.end;
             /*
              * The startLocation is the first one in the
-             * location list if we have one;
+             * line table if we have one;
              * otherwise, we construct a location for a
              * method start with no line info
              */
-            if (count > 0) {
-                location = lineLocations.get(0);
+            if (size > 0) {
+                location = createLocation(info, 0);
             } else {
                 location = new LocationImpl(virtualMachine(), this,
                                             firstIndex);
             }
         }
 
-        info = new SoftLocationXRefs(SDE.BASE_STRATUM_NAME,
-                                     lineMapper, lineLocations,
-                                     lowestLine, highestLine);
-        softBaseLocationXRefsRef = vm.createSoftReference(info);
+        softBaseLocationXRefsRef = cacheLocations(softBaseLocationXRefsRef, info);
         return info;
     }
 
-    private CompletableFuture<SoftLocationXRefs> getBaseLocationsAsync() {
-        SoftLocationXRefs info = (softBaseLocationXRefsRef == null) ? null :
-                softBaseLocationXRefsRef.get();
-        if (info != null) {
-            return CompletableFuture.completedFuture(info);
-        }
-
-        return JDWP.Method.LineTable.processAsync(vm, declaringType, ref)
-                .thenApply(lntab -> {
-                    int count = lntab.lines.length;
-
-                    List<Location> lineLocations = new ArrayList<>(count);
-                    Map<Integer, List<Location>> lineMapper = new HashMap<>();
-                    int lowestLine = -1;
-                    int highestLine = -1;
-                    for (int i = 0; i < count; i++) {
-                        long bci = lntab.lines[i].lineCodeIndex;
-                        int lineNumber = lntab.lines[i].lineNumber;
-
-                        /*
-                         * Some compilers will point multiple consecutive
-                         * lines at the same location. We need to choose
-                         * one of them so that we can consistently map back
-                         * and forth between line and location. So we choose
-                         * to record only the last line entry at a particular
-                         * location.
-                         */
-                        if ((i + 1 == count) || (bci != lntab.lines[i + 1].lineCodeIndex)) {
-                            // Remember the largest/smallest line number
-                            if (lineNumber > highestLine) {
-                                highestLine = lineNumber;
-                            }
-                            if ((lineNumber < lowestLine) || (lowestLine == -1)) {
-                                lowestLine = lineNumber;
-                            }
-                            LocationImpl loc =
-                                    new LocationImpl(virtualMachine(), this, bci);
-                            loc.addBaseLineInfo(
-                                    new BaseLineInfo(lineNumber, declaringType));
-
-                            // Add to the location list
-                            lineLocations.add(loc);
-
-                            // Add to the line -> locations map
-                            lineMapper.computeIfAbsent(lineNumber, k -> new ArrayList<>(1)).add(loc);
-                        }
-                    }
-
-                    /*
-                     * firstIndex, lastIndex, and startLocation need to be
-                     * retrieved only once since they are strongly referenced.
-                     */
-                    if (location == null) {
-                        firstIndex = lntab.start;
-                        lastIndex = lntab.end;
-                        /*
-                         * The startLocation is the first one in the
-                         * location list if we have one;
-                         * otherwise, we construct a location for a
-                         * method start with no line info
-                         */
-                        if (count > 0) {
-                            location = lineLocations.get(0);
-                        } else {
-                            location = new LocationImpl(virtualMachine(), this,
-                                    firstIndex);
-                        }
-                    }
+    private MetadataCache.Entry<SoftLocationXRefs> cacheLocations(MetadataCache.Entry<SoftLocationXRefs> old,
+                                                                  SoftLocationXRefs info) {
+        return vm.metadataCache().replace(old, MetadataCache.Category.LINE_TABLE, declaringType,
+                                      info, info.estimatedSize());
+    }
 
-                    SoftLocationXRefs res = new SoftLocationXRefs(SDE.BASE_STRATUM_NAME,
-                            lineMapper, lineLocations,
-                            lowestLine, highestLine);
-                    softBaseLocationXRefsRef = vm.createSoftReference(res);
-                    return res;
-                });
+    private MetadataCache.Entry<List<LocalVariable>> cacheVariables(List<LocalVariable> variables) {
+        return vm.metadataCache().replace(variablesRef, MetadataCache.Category.VARIABLES, declaringType,
+                                      variables, (long) variables.size() * MetadataCache.MIRROR_SIZE);
     }
 
     private List<LocalVariable> getVariables1_4() throws AbsentInformationException {
@@ -753,14 +776,13 @@ public class ConcreteMethodImpl extends MethodImpl {
             throw new AbsentInformationException();
         }
 
-        List<LocalVariable> variables = (variablesRef == null) ? null :
-                                         variablesRef.get();
+        List<LocalVariable> variables = vm.metadataCache().get(variablesRef, MetadataCache.Category.VARIABLES);
         if (variables != null) {
             return variables;
         }
         variables = getVariables1();
         variables = Collections.unmodifiableList(variables);
-        variablesRef = vm.createSoftReference(variables);
+        variablesRef = cacheVariables(variables);
         return variables;
     }
 
@@ -769,13 +791,13 @@ public class ConcreteMethodImpl extends MethodImpl {
             return CompletableFuture.failedFuture(new AbsentInformationException());
         }
 
-        List<LocalVariable> variables = (variablesRef == null) ? null : variablesRef.get();
+        List<LocalVariable> variables = vm.metadataCache().get(variablesRef, MetadataCache.Category.VARIABLES);
         if (variables != null) {
             return CompletableFuture.completedFuture(variables);
         }
         return getVariables1Async().thenApply(v -> {
             List<LocalVariable> res = Collections.unmodifiableList(v);
-            variablesRef = vm.createSoftReference(res);
+            variablesRef = cacheVariables(res);
             return res;
         });
     }
@@ -84,6 +84,7 @@ public class EventRequestManagerImpl extends MirrorImpl
 {
     private final List<? extends EventRequest>[] requestLists;
     private static int methodExitEventCmd = 0;
+    private volatile boolean hasPrefetchPlans = false;
 
     static int JDWPtoJDISuspendPolicy(byte jdwpPolicy) {
         switch(jdwpPolicy) {
@@ -126,6 +127,42 @@ public class EventRequestManagerImpl extends MirrorImpl
         return ((EventRequestImpl) eventRequest).setEnabledAsync(val);
     }
 
+    /**
+     * Sets the prefetch plan of the request: when its event suspends the event thread,
+     * the top frames of the thread with their variables, {@code this} fields and strings
+     * are captured into the {@link VirtualMachineImpl#suspensionSnapshot()} as soon as
+     * the event is received, before the event set is removed from the queue.
+     *
+     * @param frameCount the number of top frames to capture, 0 disables prefetching
+     */
+    @SuppressWarnings("unused")
+    public void setPrefetchFrameCount(EventRequest eventRequest, int frameCount) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException("Negative frame count: " + frameCount);
+        }
+        ((EventRequestImpl) eventRequest).prefetchFrameCount = frameCount;
+        if (frameCount > 0) {
+            hasPrefetchPlans = true;
+        }
+    }
+
+    /**
+     * @return the number of frames to prefetch for events of the request, 0 if none
+     */
+    int prefetchFrameCount(EventRequest eventRequest) {
+        return eventRequest instanceof EventRequestImpl
+                ? ((EventRequestImpl) eventRequest).prefetchFrameCount
+                : 0;
+    }
+
+    /**
+     * @return whether any request ever had a prefetch plan, so that incoming
+     * events need to be looked at before they are removed from the queue
+     */
+    boolean hasPrefetchPlans() {
+        return hasPrefetchPlans;
+    }
+
     private abstract class EventRequestImpl extends MirrorImpl implements EventRequest {
         volatile int id;
 
@@ -140,6 +177,8 @@ public class EventRequestManagerImpl extends MirrorImpl
         volatile boolean deleted = false;
         byte suspendPolicy = JDWP.SuspendPolicy.ALL;
         private Map<Object, Object> clientProperties = null;
+        // number of top frames to capture when an event of this request suspends its thread
+        volatile int prefetchFrameCount = 0;
 
         EventRequestImpl() {
             super(EventRequestManagerImpl.this.vm);
@@ -41,6 +41,7 @@ package com.jetbrains.jdi;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -711,6 +712,45 @@ public class EventSetImpl extends ArrayList<Event> implements EventSet {
 
     }
 
+    /**
+     * Starts the prefetch plans of the event requests, see
+     * {@link EventRequestManagerImpl#setPrefetchFrameCount}.
+     * Called on the thread which reads from the transport right after the set
+     * is received: the events are only parsed into transient mirrors here, the
+     * set is built later by the queue as usual.
+     *
+     * @return completed when the data is cached, never exceptionally,
+     *         or null if no event of the set has a prefetch plan
+     */
+    CompletableFuture<Void> prefetchAsync() {
+        if (pkt == null) {
+            return null;
+        }
+        JDWP.Event.Composite compEvt = new JDWP.Event.Composite(vm, new PacketStream(vm, pkt));
+        if (compEvt.suspendPolicy == JDWP.SuspendPolicy.NONE) {
+            return null;
+        }
+        EventRequestManagerImpl ermi = vm.eventRequestManagerImpl();
+        List<CompletableFuture<?>> captures = new ArrayList<>();
+        for (JDWP.Event.Composite.Events events : compEvt.events) {
+            EventImpl event = createEvent(events);
+            if (!(event instanceof ThreadedEventImpl) || event.destination() != EventDestination.CLIENT_EVENT) {
+                continue;
+            }
+            int frameCount = ermi.prefetchFrameCount(event.request());
+            if (frameCount > 0) {
+                ThreadReferenceImpl thread = (ThreadReferenceImpl) ((ThreadedEventImpl) event).thread();
+                captures.add(SuspensionSnapshot.captureAsync(vm, thread, frameCount).exceptionally(throwable -> {
+                    if ((vm.traceFlags & VirtualMachine.TRACE_EVENTS) != 0) {
+                        vm.printTrace("Prefetch failed for " + event + ": " + AsyncUtils.unwrap(throwable));
+                    }
+                    return null;
+                }));
+            }
+        }
+        return captures.isEmpty() ? null : CompletableFuture.allOf(captures.toArray(new CompletableFuture<?>[0]));
+    }
+
     /**
      * Filter out internal events
      */
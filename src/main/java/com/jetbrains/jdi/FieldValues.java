@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Field values of many objects read by {@link VirtualMachineImpl#fieldValuesAsync} with
+ * one burst of pipelined commands.
+ * <p>
+ * A failure to read the fields of one object, e.g. because it was collected, is kept
+ * as the error of that object and does not affect the others.
+ */
+public final class FieldValues {
+    private final Set<ObjectReference> objects;
+    private final Map<ObjectReference, Map<Field, Value>> values;
+    private final Map<ObjectReference, RuntimeException> errors;
+
+    private FieldValues(Set<ObjectReference> objects,
+                        Map<ObjectReference, Map<Field, Value>> values,
+                        Map<ObjectReference, RuntimeException> errors) {
+        this.objects = objects;
+        this.values = values;
+        this.errors = errors;
+    }
+
+    /**
+     * @return all the requested objects, in the request order
+     */
+    public Set<ObjectReference> objects() {
+        return objects;
+    }
+
+    /**
+     * Returns the field values of the object.
+     *
+     * @throws RuntimeException the error the fields of this object failed with,
+     *                          e.g. {@link ObjectCollectedException}
+     * @throws IllegalArgumentException if the object was not requested
+     */
+    public Map<Field, Value> values(ObjectReference object) {
+        Map<Field, Value> res = values.get(object);
+        if (res != null) {
+            return res;
+        }
+        RuntimeException error = errors.get(object);
+        if (error != null) {
+            throw error;
+        }
+        throw new IllegalArgumentException("Object was not requested: " + object);
+    }
+
+    /**
+     * @return the error the fields of the object failed with, null if they were read
+     */
+    public RuntimeException error(ObjectReference object) {
+        return errors.get(object);
+    }
+
+    static CompletableFuture<FieldValues> fetchAsync(VirtualMachineImpl vm,
+                                                     Map<? extends ObjectReference, ? extends List<? extends Field>> fields) {
+        // the types are needed to check the fields and to read the static ones
+        return vm.referenceTypesAsync(fields.keySet()).thenCompose(types -> {
+            Map<ObjectReference, CompletableFuture<Map<Field, Value>>> futures = new LinkedHashMap<>();
+            Map<ReferenceTypeImpl, StaticFields> staticFields = new HashMap<>();
+            Map<ObjectReference, RuntimeException> errors = new LinkedHashMap<>();
+            fields.forEach((object, objectFields) -> {
+                ReferenceTypeImpl type = (ReferenceTypeImpl) types.get(object);
+                if (type == null) {
+                    errors.put(object, new ObjectCollectedException());
+                    return;
+                }
+                List<FieldImpl> instanceFields = new ArrayList<>(objectFields.size());
+                List<FieldImpl> objectStaticFields = new ArrayList<>(0);
+                try {
+                    for (Field field : objectFields) {
+                        type.validateFieldAccess(field);
+                        (field.isStatic() ? objectStaticFields : instanceFields).add((FieldImpl) field);
+                    }
+                } catch (RuntimeException e) {
+                    errors.put(object, e);
+                    return;
+                }
+                // all the commands are sent before any reply is awaited
+                CompletableFuture<Map<Field, Value>> res = instanceValuesAsync(vm, object, instanceFields);
+                if (!objectStaticFields.isEmpty()) {
+                    // static fields of the same type are read once for all its objects
+                    StaticFields statics = staticFields.computeIfAbsent(type, t -> new StaticFields());
+                    statics.fields.addAll(objectStaticFields);
+                    res = res.thenCombine(statics.values, (instanceValues, allStatics) -> {
+                        for (FieldImpl field : objectStaticFields) {
+                            instanceValues.put(field, allStatics.get(field));
+                        }
+                        return instanceValues;
+                    });
+                }
+                futures.put(object, res);
+            });
+            staticFields.forEach((type, statics) ->
+                    type.getValuesAsync(new ArrayList<>(statics.fields)).whenComplete((values, throwable) -> {
+                        if (throwable != null) {
+                            statics.values.completeExceptionally(AsyncUtils.unwrap(throwable));
+                        } else {
+                            statics.values.complete(values);
+                        }
+                    }));
+
+            return CompletableFuture.allOf(futures.values().stream()
+                            .map(f -> f.handle((v, t) -> null))
+                            .toArray(CompletableFuture<?>[]::new))
+                    .thenApply(__ -> {
+                        Map<ObjectReference, Map<Field, Value>> values = new LinkedHashMap<>(futures.size());
+                        futures.forEach((object, future) -> {
+                            try {
+                                values.put(object, Collections.unmodifiableMap(future.join()));
+                            } catch (CompletionException e) {
+                                Throwable cause = AsyncUtils.unwrap(e);
+                                if (cause instanceof VMDisconnectedException) {
+                                    throw e;
+                                }
+                                errors.put(object, cause instanceof RuntimeException
+                                        ? (RuntimeException) cause
+                                        : new CompletionException(cause));
+                            }
+                        });
+                        return new FieldValues(Collections.unmodifiableSet(new LinkedHashSet<>(fields.keySet())),
+                                               values, errors);
+                    });
+        });
+    }
+
+    private static CompletableFuture<Map<Field, Value>> instanceValuesAsync(VirtualMachineImpl vm,
+                                                                          ObjectReference object,
+                                                                          List<FieldImpl> fields) {
+        int size = fields.size();
+        if (size == 0) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+        JDWP.ObjectReference.GetValues.Field[] queryFields = new JDWP.ObjectReference.GetValues.Field[size];
+        for (int i = 0; i < size; i++) {
+            queryFields[i] = new JDWP.ObjectReference.GetValues.Field(fields.get(i).ref());
+        }
+        return JDWP.ObjectReference.GetValues.processAsync(vm, (ObjectReferenceImpl) object, queryFields).thenApply(r -> {
+            ValueImpl[] values = r.values;
+            if (size != values.length) {
+                throw new InternalException("Wrong number of values returned from target VM");
+            }
+            Map<Field, Value> map = new HashMap<>(size);
+            for (int i = 0; i < size; i++) {
+                map.put(fields.get(i), values[i]);
+            }
+            return map;
+        });
+    }
+
+    private static final class StaticFields {
+        final Set<Field> fields = new LinkedHashSet<>();
+        final CompletableFuture<Map<Field, Value>> values = new CompletableFuture<>();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Heap analysis over JDWP: the class histogram and the search for a referrer path
+ * from an object to an anchor which keeps it alive.
+ */
+public final class HeapAnalysis {
+    // every InstanceCounts command walks the whole heap, so the chunks are large
+    static final int HISTOGRAM_CHUNK = 8192;
+
+    // referrers requested for one object
+    static final int MAX_REFERRERS = 1024;
+
+    // ReferringObjects commands in flight during the path search
+    static final int MAX_IN_FLIGHT = 32;
+
+    private HeapAnalysis() {
+    }
+
+    /**
+     * Number of live instances of a type.
+     */
+    public static final class ClassCount {
+        private final ReferenceType type;
+        private final long instances;
+
+        ClassCount(ReferenceType type, long instances) {
+            this.type = type;
+            this.instances = instances;
+        }
+
+        public ReferenceType type() {
+            return type;
+        }
+
+        public long instances() {
+            return instances;
+        }
+
+        @Override
+        public String toString() {
+            return type.name() + ": " + instances;
+        }
+    }
+
+    /**
+     * Counts the instances of all loaded types with pipelined InstanceCounts commands.
+     * Types unloaded meanwhile are left out.
+     *
+     * @return the types with instances, the most numerous first
+     */
+    static CompletableFuture<List<ClassCount>> histogramAsync(VirtualMachineImpl vm) {
+        return vm.allClassesAsync().thenCompose(types -> {
+            ReferenceTypeImpl[] all = types.toArray(new ReferenceTypeImpl[0]);
+            List<CompletableFuture<List<ClassCount>>> chunks = new ArrayList<>();
+            for (int from = 0; from < all.length; from += HISTOGRAM_CHUNK) {
+                chunks.add(countAsync(vm, Arrays.copyOfRange(all, from, Math.min(all.length, from + HISTOGRAM_CHUNK))));
+            }
+            return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+                List<ClassCount> res = new ArrayList<>();
+                chunks.forEach(chunk -> res.addAll(chunk.join()));
+                res.sort(Comparator.comparingLong(ClassCount::instances).reversed());
+                return res;
+            });
+        });
+    }
+
+    private static CompletableFuture<List<ClassCount>> countAsync(VirtualMachineImpl vm, ReferenceTypeImpl[] types) {
+        return JDWP.VirtualMachine.InstanceCounts.processAsync(vm, types)
+                .<CompletableFuture<List<ClassCount>>>handle((r, throwable) -> {
+                    if (throwable == null) {
+                        List<ClassCount> res = new ArrayList<>();
+                        for (int i = 0; i < types.length; i++) {
+                            if (r.counts[i] > 0) {
+                                res.add(new ClassCount(types[i], r.counts[i]));
+                            }
+                        }
+                        return CompletableFuture.completedFuture(res);
+                    }
+                    if (!JDWPException.isOfType(throwable, JDWP.Error.INVALID_CLASS)) {
+                        throw new CompletionException(AsyncUtils.unwrap(throwable));
+                    }
+                    if (types.length == 1) {
+                        // unloaded
+                        return CompletableFuture.completedFuture(List.of());
+                    }
+                    // some type was unloaded, find it by halves
+                    int half = types.length / 2;
+                    return countAsync(vm, Arrays.copyOfRange(types, 0, half))
+                            .thenCombine(countAsync(vm, Arrays.copyOfRange(types, half, types.length)), (a, b) -> {
+                                List<ClassCount> res = new ArrayList<>(a);
+                                res.addAll(b);
+                                return res;
+                            });
+                })
+                .thenCompose(f -> f);
+    }
+
+    /**
+     * Searches breadth first for the shortest chain of referrers from the object to an anchor:
+     * a class object (the holder of static fields) or a thread. The referrers of all objects
+     * of a level are requested with pipelined commands.
+     *
+     * @param maxDepth   the maximal length of the path
+     * @param maxVisited the maximal number of objects examined, bounds the memory used
+     * @return the path starting with the object and ending with the anchor,
+     *         or null if none was found within the limits
+     */
+    static CompletableFuture<List<ObjectReference>> rootPathAsync(VirtualMachineImpl vm, ObjectReferenceImpl object,
+                                                                  int maxDepth, int maxVisited) {
+        if (maxDepth < 0 || maxVisited < 1) {
+            throw new IllegalArgumentException("Invalid limits: maxDepth = " + maxDepth + ", maxVisited = " + maxVisited);
+        }
+        PathSearch search = new PathSearch(vm, maxDepth, maxVisited);
+        // the search state is confined to the async thread
+        vm.targetVM().asyncExecutor.execute(() -> search.start(object));
+        return search.result;
+    }
+
+    private static boolean isAnchor(ObjectReference object) {
+        return object instanceof ClassObjectReference || object instanceof ThreadReference;
+    }
+
+    private static final class Node {
+        final ObjectReferenceImpl object;
+        final Node referent;
+
+        Node(ObjectReferenceImpl object, Node referent) {
+            this.object = object;
+            this.referent = referent;
+        }
+
+        List<ObjectReference> path() {
+            List<ObjectReference> path = new ArrayList<>();
+            for (Node node = this; node != null; node = node.referent) {
+                path.add(node.object);
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
+
+    private static final class PathSearch {
+        final VirtualMachineImpl vm;
+        final int maxDepth;
+        final int maxVisited;
+        final CompletableFuture<List<ObjectReference>> result = new CompletableFuture<>();
+        final LongSet visited = new LongSet();
+
+        List<Node> frontier;
+        List<Node> nextFrontier = new ArrayList<>();
+        int depth = 0;
+        int sent = 0;
+        int inFlight = 0;
+
+        PathSearch(VirtualMachineImpl vm, int maxDepth, int maxVisited) {
+            this.vm = vm;
+            this.maxDepth = maxDepth;
+            this.maxVisited = maxVisited;
+        }
+
+        void start(ObjectReferenceImpl object) {
+            visited.add(object.ref());
+            Node root = new Node(object, null);
+            if (isAnchor(object)) {
+                result.complete(root.path());
+                return;
+            }
+            if (maxDepth == 0) {
+                result.complete(null);
+                return;
+            }
+            frontier = List.of(root);
+            expand();
+        }
+
+        private void expand() {
+            while (!result.isDone() && inFlight < MAX_IN_FLIGHT && sent < frontier.size()) {
+                Node node = frontier.get(sent++);
+                inFlight++;
+                JDWP.ObjectReference.ReferringObjects.processAsync(vm, node.object, MAX_REFERRERS)
+                        .whenComplete((r, throwable) -> referrersReceived(node, r, throwable));
+            }
+            if (!result.isDone() && inFlight == 0 && sent == frontier.size()) {
+                nextLevel();
+            }
+        }
+
+        private void referrersReceived(Node node, JDWP.ObjectReference.ReferringObjects r, Throwable throwable) {
+            inFlight--;
+            if (result.isDone()) {
+                return;
+            }
+            if (throwable != null) {
+                if (!(AsyncUtils.unwrap(throwable) instanceof ObjectCollectedException)) {
+                    result.completeExceptionally(AsyncUtils.unwrap(throwable));
+                    return;
+                }
+                // collected meanwhile, not on a path anymore
+            } else {
+                for (ObjectReferenceImpl referrer : r.referringObjects) {
+                    if (!visited.add(referrer.ref())) {
+                        continue;
+                    }
+                    Node next = new Node(referrer, node);
+                    if (isAnchor(referrer)) {
+                        result.complete(next.path());
+                        return;
+                    }
+                    if (visited.size() >= maxVisited) {
+                        traceGaveUp("visited " + visited.size() + " objects");
+                        result.complete(null);
+                        return;
+                    }
+                    nextFrontier.add(next);
+                }
+            }
+            expand();
+        }
+
+        private void nextLevel() {
+            depth++;
+            if (nextFrontier.isEmpty()) {
+                result.complete(null);
+                return;
+            }
+            if (depth >= maxDepth) {
+                traceGaveUp("reached depth " + depth);
+                result.complete(null);
+                return;
+            }
+            frontier = nextFrontier;
+            nextFrontier = new ArrayList<>();
+            sent = 0;
+            expand();
+        }
+
+        private void traceGaveUp(String reason) {
+            if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                vm.printTrace("Referrer path search stopped: " + reason);
+            }
+        }
+    }
+
+    /**
+     * Open addressing set of object ids, 0 is never a valid id.
+     */
+    static final class LongSet {
+        private long[] table = new long[256];
+        private int size = 0;
+
+        /**
+         * @return true if the id was not in the set
+         */
+        boolean add(long id) {
+            if ((size + 1) * 2 > table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                for (long value : old) {
+                    if (value != 0) {
+                        insert(value);
+                    }
+                }
+            }
+            if (insert(id)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean insert(long id) {
+            int mask = table.length - 1;
+            for (int slot = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask; ; slot = (slot + 1) & mask) {
+                if (table[slot] == id) {
+                    return false;
+                }
+                if (table[slot] == 0) {
+                    table[slot] = id;
+                    return true;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -90,6 +90,10 @@ public class InterfaceTypeImpl extends InvokableTypeImpl
     }
 
     public List<InterfaceType> subinterfaces() {
+        List<InterfaceType> indexed = vm.typeHierarchy().directSubtypesIfUpToDate(this, InterfaceType.class);
+        if (indexed != null) {
+            return indexed;
+        }
         List<InterfaceType> subs = new ArrayList<>();
         vm.forEachClass(refType -> {
             if (refType instanceof InterfaceType) {
@@ -102,7 +106,15 @@ public class InterfaceTypeImpl extends InvokableTypeImpl
         return subs;
     }
 
+    public CompletableFuture<List<InterfaceType>> subinterfacesAsync() {
+        return vm.typeHierarchy().directSubtypesAsync(this, InterfaceType.class);
+    }
+
     public List<ClassType> implementors() {
+        List<ClassType> indexed = vm.typeHierarchy().directSubtypesIfUpToDate(this, ClassType.class);
+        if (indexed != null) {
+            return indexed;
+        }
         List<ClassType> implementors = new ArrayList<>();
         vm.forEachClass(refType -> {
             if (refType instanceof ClassType) {
@@ -115,6 +127,10 @@ public class InterfaceTypeImpl extends InvokableTypeImpl
         return implementors;
     }
 
+    public CompletableFuture<List<ClassType>> implementorsAsync() {
+        return vm.typeHierarchy().directSubtypesAsync(this, ClassType.class);
+    }
+
     public boolean isInitialized() {
         return isPrepared();
     }
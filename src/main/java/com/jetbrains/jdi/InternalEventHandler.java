@@ -49,6 +49,8 @@ import com.sun.jdi.event.ClassUnloadEvent;
 import com.sun.jdi.event.Event;
 import com.sun.jdi.event.EventIterator;
 import com.sun.jdi.event.EventSet;
+import com.sun.jdi.event.ThreadDeathEvent;
+import com.sun.jdi.event.ThreadStartEvent;
 
 public class InternalEventHandler implements Runnable
 {
@@ -85,13 +87,25 @@ public class InternalEventHandler implements Runnable
                             }
                         } else if (event instanceof ClassPrepareEvent) {
                             ClassPrepareEvent cpEvent = (ClassPrepareEvent)event;
-                            ((ReferenceTypeImpl)cpEvent.referenceType())
-                                                            .markPrepared();
+                            ReferenceTypeImpl type = (ReferenceTypeImpl)cpEvent.referenceType();
+                            type.markPrepared();
+                            vm.sourceIndex().typePrepared(type);
+                            vm.typeHierarchy().typePrepared(type);
 
                             if ((vm.traceFlags & VirtualMachine.TRACE_EVENTS) != 0) {
                                 vm.printTrace("Handled Prepare Event for " +
                                               cpEvent.referenceType().name());
                             }
+                        } else if (event instanceof ThreadStartEvent) {
+                            ThreadRegistry registry = vm.threadRegistry();
+                            if (registry != null) {
+                                registry.threadStarted(((ThreadStartEvent) event).thread());
+                            }
+                        } else if (event instanceof ThreadDeathEvent) {
+                            ThreadRegistry registry = vm.threadRegistry();
+                            if (registry != null) {
+                                registry.threadDied(((ThreadDeathEvent) event).thread());
+                            }
                         }
                     }
 
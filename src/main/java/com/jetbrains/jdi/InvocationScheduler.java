@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs method invocations requested from any number of clients, overlapping them where JDWP allows.
+ * <p>
+ * A thread runs at most one invocation at a time, the invocations of a thread run in the
+ * submission order. {@link ClassType#INVOKE_SINGLE_THREADED} invocations on different threads
+ * are sent without waiting for each other. An invocation without that option resumes all
+ * the threads, so it waits until all the running invocations complete and nothing else
+ * starts until it completes.
+ */
+public class InvocationScheduler {
+    private final VirtualMachineImpl vm;
+
+    // synchronized (this)
+    private final List<Invocation<?>> pending = new LinkedList<>();
+    private final Set<ThreadReference> busyThreads = new HashSet<>();
+    private int running = 0;
+    private boolean exclusiveRunning = false;
+
+    private static final class Invocation<T> {
+        final ThreadReference thread;
+        final boolean exclusive;
+        final AsyncUtils.ThrowingSupplier<CompletableFuture<T>> action;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Invocation(ThreadReference thread, int options, AsyncUtils.ThrowingSupplier<CompletableFuture<T>> action) {
+            this.thread = thread;
+            this.exclusive = (options & ClassType.INVOKE_SINGLE_THREADED) == 0;
+            this.action = action;
+        }
+    }
+
+    InvocationScheduler(VirtualMachineImpl vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * Schedules {@link ObjectReference#invokeMethod}.
+     */
+    public CompletableFuture<Value> invokeMethod(ObjectReference object, ThreadReference thread, Method method,
+                                                 List<? extends Value> arguments, int options) {
+        return submit(thread, options, () ->
+                ((ObjectReferenceImpl) object).invokeMethodAsync(thread, method, arguments, options));
+    }
+
+    /**
+     * Schedules {@link ClassType#invokeMethod} or {@link InterfaceType#invokeMethod}.
+     */
+    public CompletableFuture<Value> invokeStaticMethod(ReferenceType type, ThreadReference thread, Method method,
+                                                       List<? extends Value> arguments, int options) {
+        if (!(type instanceof InvokableTypeImpl)) {
+            throw new IllegalArgumentException("Invalid type for static method invocation");
+        }
+        return submit(thread, options, () ->
+                ((InvokableTypeImpl) type).invokeMethodAsync(thread, method, arguments, options));
+    }
+
+    /**
+     * Schedules an invocation on the thread with the given invoke options.
+     * The action must send exactly one invoke command for the thread.
+     */
+    public <T> CompletableFuture<T> submit(ThreadReference thread, int options,
+                                           AsyncUtils.ThrowingSupplier<CompletableFuture<T>> action) {
+        vm.validateVM();
+        vm.validateMirror(thread);
+        Invocation<T> invocation = new Invocation<>(thread, options, action);
+        synchronized (this) {
+            pending.add(invocation);
+        }
+        startReady();
+        return invocation.result;
+    }
+
+    private void startReady() {
+        List<Invocation<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Invocation<?>> iterator = pending.iterator();
+            while (iterator.hasNext() && !exclusiveRunning) {
+                Invocation<?> invocation = iterator.next();
+                if (invocation.exclusive) {
+                    // the invocations submitted after it wait as well
+                    if (running == 0) {
+                        iterator.remove();
+                        exclusiveRunning = true;
+                        running++;
+                        ready.add(invocation);
+                    }
+                    break;
+                }
+                if (busyThreads.add(invocation.thread)) {
+                    iterator.remove();
+                    running++;
+                    ready.add(invocation);
+                }
+            }
+        }
+        // the commands are sent outside the lock, argument validation may go remote
+        ready.forEach(this::start);
+    }
+
+    private <T> void start(Invocation<T> invocation) {
+        if ((vm.traceFlags & VirtualMachine.TRACE_SENDS) != 0) {
+            vm.printTrace("Starting scheduled invocation on " + invocation.thread +
+                          (invocation.exclusive ? ", all threads resumed" : ""));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = invocation.action.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, throwable) -> {
+            completed(invocation);
+            if (throwable != null) {
+                invocation.result.completeExceptionally(AsyncUtils.unwrap(throwable));
+            } else {
+                invocation.result.complete(value);
+            }
+        });
+    }
+
+    private void completed(Invocation<?> invocation) {
+        synchronized (this) {
+            running--;
+            if (invocation.exclusive) {
+                exclusiveRunning = false;
+            } else {
+                busyThreads.remove(invocation.thread);
+            }
+        }
+        startReady();
+    }
+}
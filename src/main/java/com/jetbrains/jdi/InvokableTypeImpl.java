@@ -254,7 +254,8 @@ abstract class InvokableTypeImpl extends ReferenceTypeImpl {
      * {@linkplain InterfaceType#allMethods()}
      * @return A list of all methods (recursively)
      */
-    public List<Method> allMethods() {
+    @Override
+    final List<Method> collectAllMethods() {
         ArrayList<Method> list = new ArrayList<>(methods());
         ClassType clazz = superclass();
         while (clazz != null) {
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Memory budgeted cache of the type and method metadata fetched from the target VM.
+ * <p>
+ * Values stay cached until the estimated size of all cached values exceeds the budget,
+ * then the values not read recently are evicted until the cache is back below
+ * {@link #LOW_WATERMARK_PERCENT} of the budget, the largest of the oldest values first,
+ * since refetching a value costs about one round trip whatever its size. The per-method
+ * values of a type are evicted along with its methods, whose mirrors hold them.
+ * Values owned by pinned types (types with frames on the stack of a suspended thread)
+ * are not evicted. The values of an unloaded or redefined type are dropped.
+ * <p>
+ * Owners keep an {@link Entry} and read it through {@link #get(Entry, Category)}, an evicted
+ * entry reads as {@code null} and the owner refetches the value.
+ */
+public class MetadataCache {
+    public enum Category {
+        FIELDS,
+        METHODS,
+        SDE,
+        CONSTANT_POOL,
+        BYTECODES,
+        VARIABLES,
+        LINE_TABLE,
+        FIELD_VIEWS,
+        METHOD_VIEWS
+    }
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    static final long DEFAULT_BUDGET = Math.max(16L << 20, Runtime.getRuntime().maxMemory() / 20);
+
+    // estimated retained size of one field, method or local variable mirror
+    static final int MIRROR_SIZE = 96;
+
+    private static final int LOW_WATERMARK_PERCENT = 90;
+
+    // the number of the oldest entries the largest victim is chosen from
+    private static final int EVICTION_SAMPLE = 8;
+
+    // held by the method mirrors, unreachable once the methods of their type are evicted
+    private static final Set<Category> PER_METHOD = EnumSet.of(Category.BYTECODES,
+                                                               Category.VARIABLES,
+                                                               Category.LINE_TABLE);
+
+    /**
+     * A cached value. Cleared when evicted.
+     */
+    static final class Entry<T> {
+        private final Category category;
+        private final ReferenceTypeImpl owner;
+        private final long size;
+        private volatile T value;
+        // set when read, cleared by the clock sweep
+        private volatile boolean referenced;
+
+        private Entry(Category category, ReferenceTypeImpl owner, T value, long size) {
+            this.category = category;
+            this.owner = owner;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters for a category.
+     */
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long size;
+
+        Statistics(long hits, long misses, long evictions, int entries, long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.size = size;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public int entries() {
+            return entries;
+        }
+
+        /**
+         * @return estimated size of the cached values in bytes
+         */
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions +
+                    ", entries=" + entries + ", size=" + size;
+        }
+    }
+
+    private final Tracer tracer;
+    private final AtomicInteger redefinitions = new AtomicInteger();
+    private final AtomicLongArray hits = new AtomicLongArray(Category.values().length);
+    private final AtomicLongArray misses = new AtomicLongArray(Category.values().length);
+    private final AtomicLongArray evictions = new AtomicLongArray(Category.values().length);
+
+    // synchronized (this)
+    private final Map<ReferenceTypeImpl, Set<Entry<?>>> entriesByOwner = new HashMap<>();
+    // the entries of unpinned owners in the order of the clock sweep
+    private final LinkedHashSet<Entry<?>> evictionQueue = new LinkedHashSet<>();
+    private final Map<ThreadReference, Set<ReferenceTypeImpl>> pinsByThread = new HashMap<>();
+    private final Map<ReferenceTypeImpl, Integer> pinCounts = new HashMap<>();
+    private long totalSize = 0;
+    private long budget;
+
+    MetadataCache(Tracer tracer, long budget) {
+        this.tracer = tracer;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the cached value, or null if there is none or it was evicted.
+     */
+    <T> T get(Entry<T> entry, Category category) {
+        T value = entry == null ? null : entry.value;
+        if (value == null) {
+            misses.incrementAndGet(category.ordinal());
+            return null;
+        }
+        hits.incrementAndGet(category.ordinal());
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return value;
+    }
+
+    /**
+     * Caches the value and returns its entry, evicting other values if over budget.
+     *
+     * @param owner the type whose metadata this is
+     * @param size estimated retained size of the value in bytes
+     */
+    <T> Entry<T> put(Category category, ReferenceTypeImpl owner, T value, long size) {
+        Entry<T> entry = new Entry<>(category, owner, value, size);
+        synchronized (this) {
+            entriesByOwner.computeIfAbsent(owner, o -> new HashSet<>()).add(entry);
+            if (!pinCounts.containsKey(owner)) {
+                evictionQueue.add(entry);
+            }
+            totalSize += size;
+            if (totalSize > budget) {
+                evict(budget / 100 * LOW_WATERMARK_PERCENT);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Same as {@link #put} but drops the superseded entry first.
+     */
+    <T> Entry<T> replace(Entry<T> old, Category category, ReferenceTypeImpl owner, T value, long size) {
+        remove(old);
+        return put(category, owner, value, size);
+    }
+
+    /**
+     * Drops a value which is no longer valid, e.g. after the class redefinition.
+     */
+    void remove(Entry<?> entry) {
+        if (entry == null) {
+            return;
+        }
+        synchronized (this) {
+            Set<Entry<?>> entries = entriesByOwner.get(entry.owner);
+            if (entries != null && entries.remove(entry)) {
+                if (entries.isEmpty()) {
+                    entriesByOwner.remove(entry.owner);
+                }
+                evictionQueue.remove(entry);
+                totalSize -= entry.size;
+            }
+        }
+        entry.value = null;
+    }
+
+    /**
+     * Drops all the values of the type and its methods, called when it is unloaded or redefined.
+     */
+    void removeOwner(ReferenceTypeImpl owner) {
+        Set<Entry<?>> entries;
+        synchronized (this) {
+            entries = entriesByOwner.remove(owner);
+            if (entries == null) {
+                return;
+            }
+            for (Entry<?> entry : entries) {
+                evictionQueue.remove(entry);
+                totalSize -= entry.size;
+            }
+        }
+        for (Entry<?> entry : entries) {
+            entry.value = null;
+        }
+    }
+
+    /**
+     * Called when any type is redefined. Values merged from several types,
+     * e.g. the inherited members, are valid only for the same {@link #redefinitions()}.
+     */
+    void redefined() {
+        redefinitions.incrementAndGet();
+    }
+
+    int redefinitions() {
+        return redefinitions.get();
+    }
+
+    /**
+     * Protects the metadata of the type from eviction until the thread resumes,
+     * see {@link #unpin(ThreadReference)}.
+     */
+    synchronized void pin(ThreadReference thread, ReferenceTypeImpl type) {
+        if (!pinsByThread.computeIfAbsent(thread, t -> new HashSet<>()).add(type)) {
+            return;
+        }
+        if (pinCounts.merge(type, 1, Integer::sum) == 1) {
+            Set<Entry<?>> entries = entriesByOwner.get(type);
+            if (entries != null) {
+                evictionQueue.removeAll(entries);
+            }
+        }
+    }
+
+    /**
+     * Called when the thread resumes, its frames which pinned types are no longer valid.
+     */
+    synchronized void unpin(ThreadReference thread) {
+        Set<ReferenceTypeImpl> types = pinsByThread.remove(thread);
+        if (types == null) {
+            return;
+        }
+        for (ReferenceTypeImpl type : types) {
+            if (pinCounts.merge(type, -1, Integer::sum) == 0) {
+                pinCounts.remove(type);
+                unpinned(type);
+            }
+        }
+    }
+
+    /**
+     * Called when the VM resumes, no frames are left.
+     */
+    synchronized void unpinAll() {
+        pinsByThread.clear();
+        for (ReferenceTypeImpl type : pinCounts.keySet()) {
+            unpinned(type);
+        }
+        pinCounts.clear();
+    }
+
+    // synchronized (this)
+    private void unpinned(ReferenceTypeImpl type) {
+        Set<Entry<?>> entries = entriesByOwner.get(type);
+        if (entries != null) {
+            evictionQueue.addAll(entries);
+        }
+    }
+
+    synchronized void setBudget(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Negative budget: " + budget);
+        }
+        this.budget = budget;
+        if (totalSize > budget) {
+            evict(budget);
+        }
+    }
+
+    synchronized long budget() {
+        return budget;
+    }
+
+    Statistics statistics(Category category) {
+        int index = category.ordinal();
+        int count = 0;
+        long size = 0;
+        synchronized (this) {
+            for (Set<Entry<?>> entries : entriesByOwner.values()) {
+                for (Entry<?> entry : entries) {
+                    if (entry.category == category) {
+                        count++;
+                        size += entry.size;
+                    }
+                }
+            }
+        }
+        return new Statistics(hits.get(index), misses.get(index), evictions.get(index), count, size);
+    }
+
+    /**
+     * Clock sweep over the unpinned entries: a recently read entry is moved to the tail
+     * once instead of being evicted, the largest of the next {@link #EVICTION_SAMPLE}
+     * entries not read recently is evicted.
+     */
+    // synchronized (this)
+    private void evict(long targetSize) {
+        if (evictionQueue.isEmpty()) {
+            // everything left is pinned
+            return;
+        }
+        int secondChances = evictionQueue.size();
+        int evicted = 0;
+        List<Entry<?>> referenced = new ArrayList<>();
+        while (totalSize > targetSize && !evictionQueue.isEmpty()) {
+            Entry<?> victim = null;
+            int sampled = 0;
+            for (Iterator<Entry<?>> iterator = evictionQueue.iterator();
+                 iterator.hasNext() && sampled < EVICTION_SAMPLE; ) {
+                Entry<?> entry = iterator.next();
+                if (entry.referenced && secondChances > 0) {
+                    secondChances--;
+                    entry.referenced = false;
+                    iterator.remove();
+                    referenced.add(entry);
+                    continue;
+                }
+                sampled++;
+                if (victim == null || entry.size > victim.size) {
+                    victim = entry;
+                }
+            }
+            evictionQueue.addAll(referenced);
+            referenced.clear();
+            if (victim == null) {
+                continue;
+            }
+            evict(victim);
+            evicted++;
+            if (victim.category == Category.METHODS) {
+                List<Entry<?>> dependents = new ArrayList<>();
+                for (Entry<?> entry : entriesByOwner.getOrDefault(victim.owner, Set.of())) {
+                    if (PER_METHOD.contains(entry.category)) {
+                        dependents.add(entry);
+                    }
+                }
+                dependents.forEach(this::evict);
+                evicted += dependents.size();
+            }
+        }
+        int count = evicted;
+        tracer.trace(VirtualMachine.TRACE_REFTYPES, () -> "Evicted " + count + " metadata cache entries, size = " +
+                                                          totalSize + ", budget = " + budget);
+    }
+
+    // synchronized (this)
+    private void evict(Entry<?> entry) {
+        evictionQueue.remove(entry);
+        Set<Entry<?>> entries = entriesByOwner.get(entry.owner);
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            entriesByOwner.remove(entry.owner);
+        }
+        totalSize -= entry.size;
+        entry.value = null;
+        evictions.incrementAndGet(entry.category.ordinal());
+    }
+}
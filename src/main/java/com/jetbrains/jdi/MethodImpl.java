@@ -51,6 +51,8 @@ public abstract class MethodImpl extends TypeComponentImpl
 
     private final JNITypeParser signatureParser;
     private volatile Boolean obsolete = null;
+    // resolved on use, invalidated by a class unload or redefinition
+    private volatile ResolvedTypes.MethodTypes resolvedTypes = null;
 
     abstract int argSlotCount() throws AbsentInformationException;
 
@@ -147,6 +149,13 @@ public abstract class MethodImpl extends TypeComponentImpl
                                sourceName, lineNumber);
     }
 
+    /**
+     * Fetches and caches the line table, if the method has one.
+     */
+    CompletableFuture<Void> prefetchLineTable() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     LineInfo codeIndexToLineInfo(SDE.Stratum stratum,
                                  long codeIndex) {
         if (stratum.isJava()) {
@@ -169,12 +178,11 @@ public abstract class MethodImpl extends TypeComponentImpl
     }
 
     public Type returnType() throws ClassNotLoadedException {
-        return findType(returnSignature());
+        return resolvedType(argumentSignatures().size(), returnSignature());
     }
 
     public Type findType(String signature) throws ClassNotLoadedException {
-        ReferenceTypeImpl enclosing = (ReferenceTypeImpl)declaringType();
-        return enclosing.findType(signature);
+        return vm.resolvedTypes().findType((ReferenceTypeImpl) declaringType(), signature);
     }
 
     public List<String> argumentTypeNames() {
@@ -186,9 +194,26 @@ public abstract class MethodImpl extends TypeComponentImpl
     }
 
     Type argumentType(int index) throws ClassNotLoadedException {
-        ReferenceTypeImpl enclosing = (ReferenceTypeImpl)declaringType();
-        String signature = argumentSignatures().get(index);
-        return enclosing.findType(signature);
+        return resolvedType(index, argumentSignatures().get(index));
+    }
+
+    /**
+     * @param index the argument index, the argument count for the return type
+     */
+    private Type resolvedType(int index, String signature) throws ClassNotLoadedException {
+        ResolvedTypes cache = vm.resolvedTypes();
+        int generation = cache.generation();
+        ResolvedTypes.MethodTypes types = resolvedTypes;
+        if (types == null || types.generation != generation) {
+            types = new ResolvedTypes.MethodTypes(generation, argumentSignatures().size() + 1);
+            resolvedTypes = types;
+        }
+        Type type = types.types[index];
+        if (type == null) {
+            type = cache.findType((ReferenceTypeImpl) declaringType(), signature);
+            types.types[index] = type;
+        }
+        return type;
     }
 
     public List<Type> argumentTypes() throws ClassNotLoadedException {
@@ -249,6 +274,7 @@ public abstract class MethodImpl extends TypeComponentImpl
 
     void noticeRedefineClass() {
         obsolete = null;
+        resolvedTypes = null;
     }
 
     public boolean isObsolete() {
@@ -423,8 +449,7 @@ public abstract class MethodImpl extends TypeComponentImpl
 
         int argSize = arguments.size();
 
-        JNITypeParser parser = new JNITypeParser(signature());
-        List<String> signatures = parser.argumentSignatures();
+        List<String> signatures = argumentSignatures();
 
         if (signatures.size() != argSize) {
             throw new IllegalArgumentException("Invalid argument count: expected " +
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.InternalException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A local copy of an object subgraph of the target VM, see {@link VirtualMachineImpl#objectGraph}.
+ * <p>
+ * A value in the graph is null, a boxed primitive for a primitive field or array element,
+ * a {@link String}, a {@link Node} (boxed objects included),
+ * {@link #TRUNCATED} where the depth or size limit was reached, or {@link #UNAVAILABLE}
+ * for a field which could not be read. An object reachable by several paths, cycles
+ * included, is the same node.
+ */
+public final class ObjectGraph {
+    public static final Object TRUNCATED = new Marker("<truncated>");
+    public static final Object UNAVAILABLE = new Marker("<unavailable>");
+
+    private final Object root;
+    private final boolean injected;
+
+    ObjectGraph(Object root, boolean injected) {
+        this.root = root;
+        this.injected = injected;
+    }
+
+    /**
+     * @return the value of the requested object
+     */
+    public Object root() {
+        return root;
+    }
+
+    /**
+     * @return true if the graph was serialized in the target VM, false if it was read over JDWP
+     */
+    public boolean isInjected() {
+        return injected;
+    }
+
+    private static final class Marker {
+        private final String name;
+
+        Marker(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * An object or an array. The contents are filled while the graph is built
+     * and never change afterwards.
+     */
+    public static final class Node {
+        String typeName;
+        // of an object, the fields of subclasses first
+        final Map<String, Object> fields;
+        // of an array, the first elements only if truncated
+        final List<Object> elements;
+        int length;
+
+        Node(boolean array) {
+            fields = array ? null : new LinkedHashMap<>();
+            elements = array ? new ArrayList<>() : null;
+        }
+
+        /**
+         * @return the type name as in {@link com.sun.jdi.ReferenceType#name()},
+         *         null if the object was collected while the graph was read over JDWP
+         */
+        public String typeName() {
+            return typeName;
+        }
+
+        public boolean isArray() {
+            return elements != null;
+        }
+
+        /**
+         * @return the instance fields by name, a field hidden by a subclass field is left out
+         */
+        public Map<String, Object> fields() {
+            return fields != null ? Collections.unmodifiableMap(fields) : Map.of();
+        }
+
+        public List<Object> elements() {
+            return elements != null ? Collections.unmodifiableList(elements) : List.of();
+        }
+
+        /**
+         * @return the array length, which may exceed the number of {@link #elements()}
+         */
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            if (!isArray() || typeName == null) {
+                return String.valueOf(typeName);
+            }
+            int dimension = typeName.indexOf('[');
+            return typeName.substring(0, dimension + 1) + length + typeName.substring(dimension + 1);
+        }
+    }
+
+    /**
+     * Decodes the output of {@link ObjectGraphSerializer#serialize}.
+     */
+    static ObjectGraph decode(byte[] bytes) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return new ObjectGraph(read(in, new ArrayList<>()), true);
+        } catch (IOException e) {
+            throw new InternalException("Malformed object graph: " + e);
+        }
+    }
+
+    private static Object read(DataInputStream in, List<Node> nodes) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case ObjectGraphSerializer.NULL:
+                return null;
+            case ObjectGraphSerializer.BACK_REFERENCE:
+                return nodes.get(in.readInt());
+            case ObjectGraphSerializer.OBJECT: {
+                Node node = new Node(false);
+                nodes.add(node);
+                node.typeName = in.readUTF();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    Object value = read(in, nodes);
+                    node.fields.putIfAbsent(name, value);
+                }
+                return node;
+            }
+            case ObjectGraphSerializer.STRING: {
+                char[] chars = new char[in.readInt()];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = in.readChar();
+                }
+                return new String(chars);
+            }
+            case ObjectGraphSerializer.ARRAY: {
+                Node node = new Node(true);
+                nodes.add(node);
+                // Class.getName() of an array is its signature with dots
+                node.typeName = new JNITypeParser(in.readUTF().replace('.', '/')).typeName();
+                node.length = in.readInt();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    node.elements.add(read(in, nodes));
+                }
+                return node;
+            }
+            case ObjectGraphSerializer.TRUNCATED:
+                return TRUNCATED;
+            case ObjectGraphSerializer.BOOLEAN:
+                return in.readBoolean();
+            case ObjectGraphSerializer.BYTE:
+                return in.readByte();
+            case ObjectGraphSerializer.CHAR:
+                return in.readChar();
+            case ObjectGraphSerializer.SHORT:
+                return in.readShort();
+            case ObjectGraphSerializer.INT:
+                return in.readInt();
+            case ObjectGraphSerializer.LONG:
+                return in.readLong();
+            case ObjectGraphSerializer.FLOAT:
+                return in.readFloat();
+            case ObjectGraphSerializer.DOUBLE:
+                return in.readDouble();
+            default:
+                throw new IOException("unknown kind " + kind);
+        }
+    }
+}
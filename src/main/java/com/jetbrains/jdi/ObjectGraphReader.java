@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Reads object subgraphs into {@link ObjectGraph}s.
+ * <p>
+ * When a thread suspended by an event is given, {@link ObjectGraphSerializer} is defined
+ * in the system class loader of the target VM on first use and invoked there, so the graph
+ * comes back as one byte array. Otherwise, if the invocation fails, or if the helper cannot
+ * read some field of the graph, the graph is read level by level over JDWP with pipelined commands.
+ * The helper cannot read the objects of most JDK classes, e.g. of collections, so the types of
+ * the roots of such graphs are remembered and their graphs are read over JDWP right away.
+ */
+class ObjectGraphReader {
+    private static final String HELPER_NAME = ObjectGraphSerializer.class.getName();
+    private static final String SERIALIZE_SIGNATURE = "(Ljava/lang/Object;II)[B";
+
+    private final VirtualMachineImpl vm;
+
+    // synchronized (this)
+    private ClassType helperType = null;
+    // the helper cannot be defined in this VM, do not try again
+    private boolean unavailable = false;
+    // the types of the roots of the graphs the helper could not read
+    private final Set<ReferenceType> inaccessibleRoots = new HashSet<>();
+
+    ObjectGraphReader(VirtualMachineImpl vm) {
+        this.vm = vm;
+    }
+
+    ObjectGraph read(ThreadReference thread, ObjectReference object, int maxDepth, int maxSize) {
+        if (thread != null && vm.canBeModified() && !isUnavailable() && !isInaccessibleRoot(object)) {
+            try {
+                ObjectGraph graph = readInjected(thread, object, maxDepth, maxSize);
+                if (graph != null) {
+                    return graph;
+                }
+                addInaccessibleRoot(object);
+                if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                    vm.printTrace("Object graph has fields inaccessible to the helper, reading over JDWP");
+                }
+            } catch (InvocationException | IncompatibleThreadStateException | InvalidTypeException |
+                     ClassNotLoadedException | UnsupportedOperationException | InternalException |
+                     ObjectCollectedException e) {
+                if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                    vm.printTrace("Object graph helper failed, reading over JDWP: " + e);
+                }
+            } catch (RuntimeException e) {
+                // e.g. VMDisconnectedException
+                throw e;
+            } catch (Exception e) {
+                InternalException internalException = new InternalException("Object graph helper failed: " + e);
+                internalException.initCause(e);
+                throw internalException;
+            }
+        }
+        return readOverJdwp(object, maxDepth, maxSize);
+    }
+
+    private synchronized boolean isUnavailable() {
+        return unavailable;
+    }
+
+    private boolean isInaccessibleRoot(ObjectReference object) {
+        ReferenceType type = object.referenceType();
+        synchronized (this) {
+            return inaccessibleRoots.contains(type);
+        }
+    }
+
+    private void addInaccessibleRoot(ObjectReference object) {
+        ReferenceType type = object.referenceType();
+        synchronized (this) {
+            inaccessibleRoots.add(type);
+        }
+    }
+
+    synchronized void typeRemoved(ReferenceTypeImpl type) {
+        inaccessibleRoots.remove(type);
+    }
+
+    /**
+     * @return null if the helper cannot read the fields of some object, see {@link ObjectGraphSerializer}
+     */
+    private ObjectGraph readInjected(ThreadReference thread, ObjectReference object, int maxDepth, int maxSize)
+            throws Exception {
+        ClassType helper = helperType(thread);
+        Method serialize = helper.concreteMethodByName("serialize", SERIALIZE_SIGNATURE);
+        ArrayReferenceImpl bytes = (ArrayReferenceImpl) await(vm.invocationScheduler().invokeStaticMethod(
+                helper, thread, serialize, List.of(object, vm.mirrorOf(maxDepth), vm.mirrorOf(maxSize)),
+                ClassType.INVOKE_SINGLE_THREADED));
+        if (bytes == null) {
+            return null;
+        }
+        bytes.disableCollection();
+        try {
+            return ObjectGraph.decode(bytes.getBytes(0, bytes.length()));
+        } finally {
+            bytes.enableCollection();
+        }
+    }
+
+    /**
+     * Finds the helper class in the target VM, defines it if it is not there yet.
+     * Synchronized, so that it is defined once.
+     */
+    private synchronized ClassType helperType(ThreadReference thread) throws Exception {
+        if (helperType != null) {
+            return helperType;
+        }
+        ClassType loaderType = (ClassType) vm.classesByName("java.lang.ClassLoader").get(0);
+        ObjectReference loader = (ObjectReference) await(vm.invocationScheduler().invokeStaticMethod(
+                loaderType, thread,
+                loaderType.concreteMethodByName("getSystemClassLoader", "()Ljava/lang/ClassLoader;"),
+                List.of(), ClassType.INVOKE_SINGLE_THREADED));
+        StringReference name = vm.mirrorOf(HELPER_NAME);
+        name.disableCollection();
+        try {
+            ClassObjectReference clazz = findHelper(thread, loader, name);
+            if (clazz == null) {
+                clazz = defineHelper(thread, loaderType, loader, name);
+            }
+            helperType = (ClassType) clazz.reflectedType();
+            if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                vm.printTrace("Object graph helper available: " + helperType);
+            }
+            return helperType;
+        } finally {
+            name.enableCollection();
+        }
+    }
+
+    private ClassObjectReference findHelper(ThreadReference thread, ObjectReference loader, StringReference name)
+            throws Exception {
+        ClassType classType = (ClassType) vm.classesByName("java.lang.Class").get(0);
+        Method forName = classType.concreteMethodByName(
+                "forName", "(Ljava/lang/String;ZLjava/lang/ClassLoader;)Ljava/lang/Class;");
+        try {
+            return (ClassObjectReference) await(vm.invocationScheduler().invokeStaticMethod(
+                    classType, thread, forName, List.of(name, vm.mirrorOf(true), loader),
+                    ClassType.INVOKE_SINGLE_THREADED));
+        } catch (InvocationException e) {
+            // ClassNotFoundException, found only if defined by an earlier session
+            return null;
+        }
+    }
+
+    private ClassObjectReference defineHelper(ThreadReference thread, ClassType loaderType,
+                                              ObjectReference loader, StringReference name) throws Exception {
+        byte[] classFile;
+        try (InputStream in = ObjectGraphSerializer.class.getResourceAsStream("ObjectGraphSerializer.class")) {
+            if (in == null) {
+                throw new UnsupportedOperationException("Object graph helper class file not found");
+            }
+            classFile = in.readAllBytes();
+        } catch (IOException e) {
+            throw new UnsupportedOperationException("Object graph helper class file not readable: " + e);
+        }
+        ArrayType byteArrayType = (ArrayType) vm.classesByName("byte[]").get(0);
+        ArrayReferenceImpl bytes = (ArrayReferenceImpl) byteArrayType.newInstance(classFile.length);
+        bytes.disableCollection();
+        try {
+            bytes.setBytes(0, classFile);
+            Method defineClass = loaderType.concreteMethodByName(
+                    "defineClass", "(Ljava/lang/String;[BII)Ljava/lang/Class;");
+            return (ClassObjectReference) await(vm.invocationScheduler().invokeMethod(
+                    loader, thread, defineClass,
+                    List.of(name, bytes, vm.mirrorOf(0), vm.mirrorOf(classFile.length)),
+                    ClassType.INVOKE_SINGLE_THREADED));
+        } catch (InvocationException e) {
+            // a LinkageError (e.g. unsupported class file version) or a SecurityException,
+            // it fails the same way every time
+            unavailable = true;
+            throw e;
+        } finally {
+            bytes.enableCollection();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = AsyncUtils.unwrap(e);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the graph breadth first: the types, the fields and the array elements of
+     * all objects of a level are read with pipelined commands, then their strings.
+     * The size is estimated as the serializer counts it, since the levels are visited
+     * in a different order the truncated parts may differ from the injected result.
+     */
+    private ObjectGraph readOverJdwp(ObjectReference object, int maxDepth, int maxSize) {
+        JdwpWalk walk = new JdwpWalk(maxDepth, maxSize);
+        Object root = walk.value(object, 0);
+        while (!walk.level.isEmpty()) {
+            walk.readLevel();
+        }
+        return new ObjectGraph(root, false);
+    }
+
+    private final class JdwpWalk {
+        final int maxDepth;
+        final int maxSize;
+        final Map<ObjectReference, ObjectGraph.Node> nodes = new HashMap<>();
+        final Map<StringReference, String> strings = new HashMap<>();
+        List<ObjectReference> level = new ArrayList<>();
+        List<ObjectReference> nextLevel = new ArrayList<>();
+        int depth = 0;
+        long size = 0;
+
+        JdwpWalk(int maxDepth, int maxSize) {
+            this.maxDepth = maxDepth;
+            this.maxSize = maxSize;
+        }
+
+        void readLevel() {
+            Map<ArrayReference, CompletableFuture<Integer>> lengths = new HashMap<>();
+            for (ObjectReference object : level) {
+                if (object instanceof ArrayReference) {
+                    // sent together with the type requests
+                    lengths.put((ArrayReference) object, ((ArrayReferenceImpl) object).lengthAsync()
+                            .exceptionally(e -> 0));
+                }
+            }
+            Map<ObjectReference, ReferenceType> types = vm.referenceTypes(level);
+            Map<ObjectReference, List<Field>> fields = new LinkedHashMap<>();
+            Map<ArrayReference, CompletableFuture<List<Value>>> elements = new HashMap<>();
+            for (ObjectReference object : level) {
+                ReferenceType type = types.get(object);
+                if (type == null) {
+                    // collected meanwhile
+                    continue;
+                }
+                ObjectGraph.Node node = nodes.get(object);
+                node.typeName = type.name();
+                if (object instanceof ArrayReference) {
+                    ArrayReference array = (ArrayReference) object;
+                    node.length = lengths.get(array).join();
+                    int count = (int) Math.min(node.length, Math.max(0, maxSize - size));
+                    size += 1 + 2 + node.typeName.length() + 8;
+                    elements.put(array, ((ArrayReferenceImpl) array).getValuesAsync(0, count)
+                            .exceptionally(e -> List.of()));
+                } else {
+                    List<Field> instanceFields = new ArrayList<>();
+                    for (Field field : type.allFields()) {
+                        if (!field.isStatic()) {
+                            instanceFields.add(field);
+                        }
+                    }
+                    size += 1 + 2 + node.typeName.length() + 4;
+                    fields.put(object, instanceFields);
+                }
+            }
+            // the elements are read while the field values are
+            FieldValues values = vm.fieldValues(fields);
+            fetchStrings(values, elements);
+
+            for (ObjectReference object : level) {
+                ObjectGraph.Node node = nodes.get(object);
+                if (object instanceof ArrayReference) {
+                    CompletableFuture<List<Value>> arrayValues = elements.get(object);
+                    if (arrayValues != null) {
+                        for (Value value : arrayValues.join()) {
+                            node.elements.add(value(value, depth + 1));
+                        }
+                    }
+                } else if (fields.containsKey(object)) {
+                    Map<Field, Value> objectValues = values.error(object) == null ? values.values(object) : null;
+                    for (Field field : fields.get(object)) {
+                        size += 2 + field.name().length();
+                        Object value = objectValues != null
+                                ? value(objectValues.get(field), depth + 1)
+                                : ObjectGraph.UNAVAILABLE;
+                        // the fields of subclasses come first and hide the others
+                        node.fields.putIfAbsent(field.name(), value);
+                    }
+                }
+            }
+            level = nextLevel;
+            nextLevel = new ArrayList<>();
+            depth++;
+        }
+
+        private void fetchStrings(FieldValues values, Map<ArrayReference, CompletableFuture<List<Value>>> elements) {
+            Set<StringReference> pending = new HashSet<>();
+            for (ObjectReference object : values.objects()) {
+                if (values.error(object) == null) {
+                    values.values(object).values().forEach(v -> addString(v, pending));
+                }
+            }
+            elements.values().forEach(f -> f.join().forEach(v -> addString(v, pending)));
+            if (!pending.isEmpty()) {
+                strings.putAll(vm.stringValues(pending));
+            }
+        }
+
+        private void addString(Value value, Set<StringReference> pending) {
+            if (value instanceof StringReference && !strings.containsKey(value)) {
+                pending.add((StringReference) value);
+            }
+        }
+
+        /**
+         * @return the local value, a new node is read with the next level
+         */
+        Object value(Value value, int valueDepth) {
+            if (value == null) {
+                size += 1;
+                return null;
+            }
+            if (value instanceof PrimitiveValue) {
+                size += 9;
+                return primitive((PrimitiveValue) value);
+            }
+            if (value instanceof StringReference) {
+                String s = strings.get(value);
+                if (s == null) {
+                    s = ((StringReference) value).value();
+                }
+                if (size + s.length() * 2L > maxSize) {
+                    size += 1;
+                    return ObjectGraph.TRUNCATED;
+                }
+                size += 5 + s.length() * 2L;
+                return s;
+            }
+            ObjectReference object = (ObjectReference) value;
+            ObjectGraph.Node node = nodes.get(object);
+            if (node != null) {
+                size += 5;
+                return node;
+            }
+            if (valueDepth >= maxDepth || size >= maxSize) {
+                size += 1;
+                return ObjectGraph.TRUNCATED;
+            }
+            node = new ObjectGraph.Node(object instanceof ArrayReference);
+            nodes.put(object, node);
+            (valueDepth == depth ? level : nextLevel).add(object);
+            return node;
+        }
+    }
+
+    private static Object primitive(PrimitiveValue value) {
+        if (value instanceof BooleanValue) {
+            return value.booleanValue();
+        } else if (value instanceof ByteValue) {
+            return value.byteValue();
+        } else if (value instanceof CharValue) {
+            return value.charValue();
+        } else if (value instanceof ShortValue) {
+            return value.shortValue();
+        } else if (value instanceof IntegerValue) {
+            return value.intValue();
+        } else if (value instanceof LongValue) {
+            return value.longValue();
+        } else if (value instanceof FloatValue) {
+            return value.floatValue();
+        } else {
+            return value.doubleValue();
+        }
+    }
+}
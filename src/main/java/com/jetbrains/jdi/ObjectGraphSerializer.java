@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes an object subgraph into bytes decoded by {@link ObjectGraph}.
+ * <p>
+ * This class is not used in the debugger: its class file is defined in the target VM
+ * and invoked there, so it must depend on nothing but {@code java.base}. It is defined
+ * in the unnamed module, so the fields of the classes in packages not opened to it,
+ * e.g. of {@code java.util.ArrayList}, cannot be read; such graphs are not serialized.
+ */
+public final class ObjectGraphSerializer {
+    static final byte NULL = 0;
+    static final byte BACK_REFERENCE = 1;
+    static final byte OBJECT = 2;
+    static final byte STRING = 3;
+    static final byte ARRAY = 4;
+    static final byte TRUNCATED = 5;
+    static final byte BOOLEAN = 6;
+    static final byte BYTE = 7;
+    static final byte CHAR = 8;
+    static final byte SHORT = 9;
+    static final byte INT = 10;
+    static final byte LONG = 11;
+    static final byte FLOAT = 12;
+    static final byte DOUBLE = 13;
+
+    // the field name of the primitive value in the boxed types
+    private static final String BOXED_VALUE_FIELD = "value";
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<Object, Integer> seen = new IdentityHashMap<>();
+    private final int maxDepth;
+    private final int maxSize;
+
+    private ObjectGraphSerializer(int maxDepth, int maxSize) {
+        this.maxDepth = maxDepth;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param maxDepth objects deeper than this are written as truncated
+     * @param maxSize  values are written as truncated once the output reaches this size
+     * @return null if a reachable field cannot be read
+     */
+    public static byte[] serialize(Object root, int maxDepth, int maxSize) throws IOException {
+        ObjectGraphSerializer serializer = new ObjectGraphSerializer(maxDepth, maxSize);
+        if (!serializer.write(root, false, 0)) {
+            return null;
+        }
+        serializer.out.flush();
+        return serializer.bytes.toByteArray();
+    }
+
+    /**
+     * @param primitive true if the value is boxed from a primitive field or array element,
+     *                  false if it is a reference, which may be a boxed object as well
+     * @return false if a reachable field cannot be read, the output is incomplete then
+     */
+    private boolean write(Object value, boolean primitive, int depth) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return true;
+        }
+        if (primitive) {
+            writePrimitive(value);
+            return true;
+        }
+        Integer index = seen.get(value);
+        if (index != null) {
+            out.writeByte(BACK_REFERENCE);
+            out.writeInt(index);
+            return true;
+        }
+        if (value instanceof String) {
+            String s = (String) value;
+            if (out.size() + s.length() * 2L > maxSize) {
+                out.writeByte(TRUNCATED);
+                return true;
+            }
+            out.writeByte(STRING);
+            out.writeInt(s.length());
+            out.writeChars(s);
+            return true;
+        }
+        if (depth >= maxDepth || out.size() >= maxSize) {
+            out.writeByte(TRUNCATED);
+            return true;
+        }
+        seen.put(value, seen.size());
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            int count = Math.min(length, Math.max(0, maxSize - out.size()));
+            boolean primitiveElements = type.getComponentType().isPrimitive();
+            out.writeByte(ARRAY);
+            out.writeUTF(type.getName());
+            out.writeInt(length);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                if (!write(Array.get(value, i), primitiveElements, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (isBoxed(value)) {
+            // the same shape as read over JDWP, without reflection on java.base
+            out.writeByte(OBJECT);
+            out.writeUTF(type.getName());
+            out.writeInt(1);
+            out.writeUTF(BOXED_VALUE_FIELD);
+            writePrimitive(value);
+            return true;
+        }
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        out.writeByte(OBJECT);
+        out.writeUTF(type.getName());
+        out.writeInt(fields.size());
+        for (Field field : fields) {
+            out.writeUTF(field.getName());
+            Object fieldValue;
+            try {
+                field.setAccessible(true);
+                fieldValue = field.get(value);
+            } catch (RuntimeException | IllegalAccessException e) {
+                // e.g. not opened by its module
+                return false;
+            }
+            if (!write(fieldValue, field.getType().isPrimitive(), depth + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBoxed(Object value) {
+        return value instanceof Boolean || value instanceof Byte || value instanceof Character ||
+                value instanceof Short || value instanceof Integer || value instanceof Long ||
+                value instanceof Float || value instanceof Double;
+    }
+
+    private void writePrimitive(Object value) throws IOException {
+        if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        }
+    }
+}
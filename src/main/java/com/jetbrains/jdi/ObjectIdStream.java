@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers the objects of a heap query reply (instances, referring objects) page by page.
+ * <p>
+ * The reply is kept as raw ids, the mirrors are created only for the page being delivered.
+ * Each page is delivered in a separate task on the JDI async thread, so replies of other
+ * commands are not held up. When the consumer stops or the returned future is cancelled,
+ * the ids not delivered yet are released in the target VM without creating mirrors.
+ */
+final class ObjectIdStream {
+    private final VirtualMachineImpl vm;
+    private final int pageSize;
+    private final ArrayReferenceImpl.ChunkConsumer<? super List<ObjectReference>> consumer;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    // accessed on the async thread only
+    private byte[] tags;
+    private long[] ids;
+    private int next = 0;
+
+    private ObjectIdStream(VirtualMachineImpl vm, int pageSize,
+                           ArrayReferenceImpl.ChunkConsumer<? super List<ObjectReference>> consumer) {
+        this.vm = vm;
+        this.pageSize = pageSize;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Must be called before the command is sent, the ids of an unread reply stay pinned in the target VM.
+     */
+    static void checkPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+    }
+
+    /**
+     * Reads the reply of the sent command, which must be an int count followed by tagged object ids.
+     *
+     * @param pageSize checked with {@link #checkPageSize} before the command was sent
+     * @return a future completed when all the objects are consumed or the consumer stopped,
+     *         cancel it to stop the delivery
+     */
+    static CompletableFuture<Void> stream(VirtualMachineImpl vm, PacketStream ps, int pageSize,
+                                          ArrayReferenceImpl.ChunkConsumer<? super List<ObjectReference>> consumer) {
+        ObjectIdStream stream = new ObjectIdStream(vm, pageSize, consumer);
+        ps.readReply(p -> {
+            int count = ps.readInt();
+            stream.tags = new byte[count];
+            stream.ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                stream.tags[i] = ps.readByte();
+                stream.ids[i] = ps.readObjectRef();
+            }
+            return stream;
+        }).whenComplete((s, throwable) -> {
+            if (throwable != null) {
+                stream.result.completeExceptionally(AsyncUtils.unwrap(throwable));
+            } else {
+                s.deliverNext();
+            }
+        });
+        return stream.result;
+    }
+
+    private void deliverNext() {
+        if (result.isDone()) {
+            // cancelled
+            release();
+            return;
+        }
+        if (next >= ids.length) {
+            result.complete(null);
+            return;
+        }
+        int index = next;
+        int end = Math.min(ids.length, index + pageSize);
+        List<ObjectReference> page = new ArrayList<>(end - index);
+        for (int i = index; i < end; i++) {
+            page.add(vm.objectMirror(ids[i], tags[i]));
+        }
+        next = end;
+        boolean more;
+        try {
+            more = consumer.accept(index, Collections.unmodifiableList(page));
+        } catch (Throwable e) {
+            release();
+            result.completeExceptionally(e);
+            return;
+        }
+        if (!more) {
+            release();
+            result.complete(null);
+            return;
+        }
+        vm.targetVM().asyncExecutor.execute(this::deliverNext);
+    }
+
+    /**
+     * Releases the ids which were not turned into mirrors, each was sent once.
+     */
+    private void release() {
+        int count = ids.length - next;
+        if (count <= 0) {
+            return;
+        }
+        if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+            vm.printTrace("Disposing " + count + " undelivered object references");
+        }
+        JDWP.VirtualMachine.DisposeObjects.Request[] requests = new JDWP.VirtualMachine.DisposeObjects.Request[count];
+        for (int i = 0; i < count; i++) {
+            requests[i] = new JDWP.VirtualMachine.DisposeObjects.Request(
+                    new ObjectReferenceImpl(vm, ids[next + i]), 1);
+        }
+        next = ids.length;
+        JDWP.VirtualMachine.DisposeObjects.processAsync(vm, requests);
+    }
+}
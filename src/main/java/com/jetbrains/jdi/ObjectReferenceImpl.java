@@ -703,6 +703,31 @@ public class ObjectReferenceImpl extends ValueImpl
         }
     }
 
+    /**
+     * Same as {@link #referringObjects(long)}, but creates the mirrors and delivers them
+     * to the consumer one page at a time, see {@link ObjectIdStream}. The consumer is
+     * called on the JDI async thread and should not block.
+     *
+     * @return a future completed when all referrers are consumed or the consumer stopped,
+     *         cancel it to stop the delivery
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<Void> referringObjectsAsync(long maxReferrers, int pageSize,
+                                                         ArrayReferenceImpl.ChunkConsumer<? super List<ObjectReference>> consumer) {
+        if (!vm.canGetInstanceInfo()) {
+            throw new UnsupportedOperationException(
+                "target does not support getting referring objects");
+        }
+        if (maxReferrers < 0) {
+            throw new IllegalArgumentException("maxReferrers is less than zero: "
+                                              + maxReferrers);
+        }
+        ObjectIdStream.checkPageSize(pageSize);
+        int intMax = (int) Math.min(maxReferrers, Integer.MAX_VALUE);
+        return ObjectIdStream.stream(vm, JDWP.ObjectReference.ReferringObjects.enqueueCommand(vm, this, intMax),
+                                     pageSize, consumer);
+    }
+
     long ref() {
         return ref;
     }
@@ -746,7 +771,7 @@ public class ObjectReferenceImpl extends ValueImpl
             // Validate assignment
             ReferenceType destType = (ReferenceTypeImpl) destination.type();
             ReferenceTypeImpl myType = (ReferenceTypeImpl) referenceType();
-            if (!myType.isAssignableTo(destType)) {
+            if (!vm.resolvedTypes().isAssignable(myType, (ReferenceTypeImpl) destType)) {
                 JNITypeParser parser = new JNITypeParser(destType.signature());
                 String destTypeName = parser.typeName();
                 throw new InvalidTypeException("Can't assign " +
@@ -41,6 +41,7 @@ package com.jetbrains.jdi;
 import com.sun.jdi.*;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -444,7 +445,7 @@ class PacketStream {
      */
     String readString() {
         int len = readInt();
-        String ret = new String(pkt.data, inCursor, len, UTF_8);
+        String ret = vm.stringDecodingCache().decode(pkt.data, inCursor, len);
         inCursor += len;
         return ret;
     }
@@ -662,6 +663,113 @@ class PacketStream {
         return list;
     }
 
+    /**
+     * Reads a region of a primitive array, as returned by ArrayReference.GetValues,
+     * directly into the Java array {@code dest} (e.g. int[] for JDWP.Tag.INT)
+     * without creating value mirrors.
+     */
+    void readPrimitiveArrayRegion(int tag, Object dest, int offset, int length) {
+        byte typeKey = readByte();
+        int count = readInt();
+        if (typeKey != tag || count != length) {
+            throw new InternalException("Unexpected array region: tag=" + typeKey + ", length=" + count);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pkt.data, inCursor, pkt.data.length - inCursor);
+        switch (tag) {
+            case JDWP.Tag.BOOLEAN:
+                boolean[] booleans = (boolean[]) dest;
+                for (int i = 0; i < length; i++) {
+                    booleans[offset + i] = pkt.data[inCursor + i] != 0;
+                }
+                break;
+            case JDWP.Tag.BYTE:
+                System.arraycopy(pkt.data, inCursor, dest, offset, length);
+                break;
+            case JDWP.Tag.CHAR:
+                buffer.asCharBuffer().get((char[]) dest, offset, length);
+                break;
+            case JDWP.Tag.SHORT:
+                buffer.asShortBuffer().get((short[]) dest, offset, length);
+                break;
+            case JDWP.Tag.INT:
+                buffer.asIntBuffer().get((int[]) dest, offset, length);
+                break;
+            case JDWP.Tag.LONG:
+                buffer.asLongBuffer().get((long[]) dest, offset, length);
+                break;
+            case JDWP.Tag.FLOAT:
+                buffer.asFloatBuffer().get((float[]) dest, offset, length);
+                break;
+            case JDWP.Tag.DOUBLE:
+                buffer.asDoubleBuffer().get((double[]) dest, offset, length);
+                break;
+            default:
+                throw new InternalException("Not a primitive tag: " + tag);
+        }
+        inCursor += length * primitiveSize(tag);
+    }
+
+    /**
+     * Writes a region of the Java primitive array {@code src}
+     * in the format of ArrayReference.SetValues.
+     */
+    void writePrimitiveArrayRegion(int tag, Object src, int offset, int length) {
+        writeInt(length);
+        byte[] bytes = new byte[length * primitiveSize(tag)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        switch (tag) {
+            case JDWP.Tag.BOOLEAN:
+                boolean[] booleans = (boolean[]) src;
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = (byte) (booleans[offset + i] ? 1 : 0);
+                }
+                break;
+            case JDWP.Tag.BYTE:
+                System.arraycopy(src, offset, bytes, 0, length);
+                break;
+            case JDWP.Tag.CHAR:
+                buffer.asCharBuffer().put((char[]) src, offset, length);
+                break;
+            case JDWP.Tag.SHORT:
+                buffer.asShortBuffer().put((short[]) src, offset, length);
+                break;
+            case JDWP.Tag.INT:
+                buffer.asIntBuffer().put((int[]) src, offset, length);
+                break;
+            case JDWP.Tag.LONG:
+                buffer.asLongBuffer().put((long[]) src, offset, length);
+                break;
+            case JDWP.Tag.FLOAT:
+                buffer.asFloatBuffer().put((float[]) src, offset, length);
+                break;
+            case JDWP.Tag.DOUBLE:
+                buffer.asDoubleBuffer().put((double[]) src, offset, length);
+                break;
+            default:
+                throw new InternalException("Not a primitive tag: " + tag);
+        }
+        dataStream.write(bytes, 0, bytes.length);
+    }
+
+    static int primitiveSize(int tag) {
+        switch (tag) {
+            case JDWP.Tag.BOOLEAN:
+            case JDWP.Tag.BYTE:
+                return 1;
+            case JDWP.Tag.CHAR:
+            case JDWP.Tag.SHORT:
+                return 2;
+            case JDWP.Tag.INT:
+            case JDWP.Tag.FLOAT:
+                return 4;
+            case JDWP.Tag.LONG:
+            case JDWP.Tag.DOUBLE:
+                return 8;
+            default:
+                throw new InternalException("Not a primitive tag: " + tag);
+        }
+    }
+
     void writeArrayRegion(List<Value> srcValues) {
         writeInt(srcValues.size());
         for (Value value : srcValues) {
@@ -40,14 +40,12 @@ package com.jetbrains.jdi;
 
 import com.sun.jdi.*;
 
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceType {
@@ -57,9 +55,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     private String baseSourcePath = null;
     protected int modifiers = -1;
     private final Object cachesLock = new Object();
-    private volatile SoftReference<Field[]> fieldsRef = null;
-    private volatile SoftReference<Method[]> methodsRef = null;
-    private volatile SoftReference<SDE> sdeRef = null;
+    private volatile MetadataCache.Entry<Members<Field>> fieldsRef = null;
+    private volatile MetadataCache.Entry<Members<Method>> methodsRef = null;
+    private volatile MetadataCache.Entry<SDE> sdeRef = null;
+    private volatile MetadataCache.Entry<FieldViews> fieldViewsRef = null;
+    private volatile MetadataCache.Entry<MethodViews> methodViewsRef = null;
 
     private ClassLoaderReference classLoader = null;
     private volatile ClassObjectReference classObject = null;
@@ -69,7 +69,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
 
     private volatile boolean constantPoolInfoGotten = false;
     private volatile int constanPoolCount;
-    private volatile SoftReference<byte[]> constantPoolBytesRef = null;
+    private volatile MetadataCache.Entry<byte[]> constantPoolBytesRef = null;
 
     /* to mark a SourceFile request that returned a genuine JDWP.Error.ABSENT_INFORMATION */
     private static final String ABSENT_BASE_SOURCE_NAME = "**ABSENT_BASE_SOURCE_NAME**";
@@ -92,16 +92,23 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         baseSourceName = null;
         baseSourcePath = null;
         modifiers = -1;
+        MetadataCache cache = vm.metadataCache();
+        // the member views of subtypes include the members of this type
+        cache.redefined();
         synchronized (cachesLock) {
+            fieldViewsRef = null;
+            methodViewsRef = null;
             fieldsRef = null;
-            Method[] methods = getFromCache(methodsRef);
+            Members<Method> methods = getFromCache(methodsRef, MetadataCache.Category.METHODS);
             if (methods != null) {
-                for (Method method : methods) {
+                for (Method method : methods.array) {
                     ((MethodImpl) method).noticeRedefineClass();
                 }
             }
             methodsRef = null;
             sdeRef = null;
+            // the bytecodes, variables and line tables of the methods too
+            cache.removeOwner(this);
         }
         constantPoolInfoGotten = false;
     }
@@ -111,16 +118,11 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             // obsolete method
             return new ObsoleteMethodImpl(vm, this);
         }
-        // Fetch all methods for the class, check performance impact
-        // Needs no synchronization now, since methods() returns
-        // unmodifiable local data
-        for (Method value : methods()) {
-            MethodImpl method = (MethodImpl) value;
-            if (method.ref() == ref) {
-                return method;
-            }
+        Method method = declaredMethods().byId(ref);
+        if (method == null) {
+            throw new IllegalArgumentException("Invalid method id: " + ref);
         }
-        throw new IllegalArgumentException("Invalid method id: " + ref);
+        return method;
     }
 
     CompletableFuture<Method> getMethodMirrorAsync(long ref) {
@@ -128,28 +130,97 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             // obsolete method
             return CompletableFuture.completedFuture(new ObsoleteMethodImpl(vm, this));
         }
-        return methodsAsync().thenApply(methods -> {
-            for (Method value : methods) {
-                MethodImpl method = (MethodImpl) value;
-                if (method.ref() == ref) {
-                    return method;
-                }
+        return declaredMethodsAsync().thenApply(methods -> {
+            Method method = methods.byId(ref);
+            if (method == null) {
+                throw new IllegalArgumentException("Invalid method id: " + ref);
             }
-            throw new IllegalArgumentException("Invalid method id: " + ref);
+            return method;
         });
     }
 
     Field getFieldMirror(long ref) {
-        // Fetch all fields for the class, check performance impact
-        // Needs no synchronization now, since fields() returns
-        // unmodifiable local data
-        for (Field value : fields()) {
-            FieldImpl field = (FieldImpl) value;
-            if (field.ref() == ref) {
-                return field;
+        Field field = declaredFields().byId(ref);
+        if (field == null) {
+            throw new IllegalArgumentException("Invalid field id: " + ref);
+        }
+        return field;
+    }
+
+    /**
+     * Declared fields or methods of a type, indexed by id and by name.
+     */
+    static final class Members<T extends TypeComponent> {
+        final T[] array;
+
+        // open addressing table of ids, slot holds the index in the array plus one
+        private final long[] ids;
+        private final int[] indexes;
+
+        // name -> T or T[] for overloads
+        private final Map<String, Object> byName;
+
+        Members(T[] array, ToLongFunction<T> id) {
+            this.array = array;
+            int capacity = Integer.highestOneBit(Math.max(array.length, 1) * 2) * 2;
+            ids = new long[capacity];
+            indexes = new int[capacity];
+            byName = new HashMap<>(array.length * 4 / 3 + 1);
+            for (int i = 0; i < array.length; i++) {
+                T member = array[i];
+                int slot = slot(id.applyAsLong(member));
+                while (indexes[slot] != 0) {
+                    slot = (slot + 1) & (ids.length - 1);
+                }
+                ids[slot] = id.applyAsLong(member);
+                indexes[slot] = i + 1;
+                byName.merge(member.name(), member, (oldValue, newValue) -> {
+                    if (oldValue instanceof TypeComponent[]) {
+                        TypeComponent[] oldArray = (TypeComponent[]) oldValue;
+                        TypeComponent[] newArray = Arrays.copyOf(oldArray, oldArray.length + 1);
+                        newArray[oldArray.length] = (TypeComponent) newValue;
+                        return newArray;
+                    }
+                    return new TypeComponent[]{(TypeComponent) oldValue, (TypeComponent) newValue};
+                });
+            }
+        }
+
+        private int slot(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (ids.length - 1);
+        }
+
+        /**
+         * @return the member with the id, null if there is none
+         */
+        T byId(long id) {
+            for (int slot = slot(id); indexes[slot] != 0; slot = (slot + 1) & (ids.length - 1)) {
+                if (ids[slot] == id) {
+                    return array[indexes[slot] - 1];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the members with the name in the declaration order
+         */
+        @SuppressWarnings("unchecked")
+        List<T> byName(String name) {
+            Object res = byName.get(name);
+            if (res == null) {
+                return List.of();
+            }
+            if (res instanceof TypeComponent[]) {
+                return (List<T>) List.of((TypeComponent[]) res);
             }
+            return List.of((T) res);
+        }
+
+        long size() {
+            // mirrors plus the indexes
+            return array.length * (MetadataCache.MIRROR_SIZE + 64L);
         }
-        throw new IllegalArgumentException("Invalid field id: " + ref);
     }
 
     public boolean equals(Object obj) {
@@ -341,9 +412,13 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     }
 
     public CompletableFuture<List<Field>> fieldsAsync() {
-        Field[] fields = getFromCache(fieldsRef);
+        return declaredFieldsAsync().thenApply(fields -> unmodifiableList(fields.array));
+    }
+
+    private CompletableFuture<Members<Field>> declaredFieldsAsync() {
+        Members<Field> fields = getFromCache(fieldsRef, MetadataCache.Category.FIELDS);
         if (fields != null) {
-            return CompletableFuture.completedFuture(unmodifiableList(fields));
+            return CompletableFuture.completedFuture(fields);
         }
         CompletableFuture<Field[]> array;
         if (vm.canGet1_5LanguageFeatures()) {
@@ -353,15 +428,22 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             array = JDWP.ReferenceType.Fields.processAsync(vm, this)
                     .thenApply(r -> readFields(r.declared));
         }
-        return array.thenApply(res -> {
-            res = tryToCache(fieldsRef, res, v -> fieldsRef = v);
-            return unmodifiableList(res);
-        });
+        return array.thenApply(this::cacheFields);
+    }
+
+    private Members<Field> cacheFields(Field[] array) {
+        Members<Field> fields = new Members<>(array, f -> ((FieldImpl) f).ref());
+        return tryToCache(fieldsRef, MetadataCache.Category.FIELDS, fields, fields.size(), v -> fieldsRef = v);
     }
 
     public List<Field> fields() {
-        Field[] fields = getFromCache(fieldsRef);
-        if (fields == null) {
+        return unmodifiableList(declaredFields().array);
+    }
+
+    private Members<Field> declaredFields() {
+        Members<Field> res = getFromCache(fieldsRef, MetadataCache.Category.FIELDS);
+        if (res == null) {
+            Field[] fields;
             if (vm.canGet1_5LanguageFeatures()) {
                 JDWP.ReferenceType.FieldsWithGeneric.FieldInfo[] jdwpFields;
                 try {
@@ -381,9 +463,9 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
                 }
                 fields = readFields(jdwpFields);
             }
-            fields = tryToCache(fieldsRef, fields, v -> fieldsRef = v);
+            res = cacheFields(fields);
         }
-        return unmodifiableList(fields);
+        return res;
     }
 
     abstract List<? extends ReferenceType> inheritedTypes();
@@ -410,6 +492,15 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     }
 
     public List<Field> visibleFields() {
+        return fieldViews().visibleFields;
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<List<Field>> visibleFieldsAsync() {
+        return fieldViewsAsync().thenApply(views -> views.visibleFields);
+    }
+
+    private List<Field> collectVisibleFields() {
         /*
          * Maintain two different collections of visible fields. The
          * list maintains a reasonable order for return. The
@@ -462,58 +553,30 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         }
     }
 
-    CompletableFuture<List<Field>> addAllFieldsAsync(List<Field> fieldList, Set<ReferenceType> typeSet) {
-        return collectRecursively(ReferenceTypeImpl::fieldsAsync, fieldList, typeSet);
-    }
-
-    CompletableFuture<List<Method>> addAllMethodsAsync(List<Method> methodList, Set<ReferenceType> typeSet) {
-        return collectRecursively(ReferenceTypeImpl::methodsAsync, methodList, typeSet);
+    public List<Field> allFields() {
+        return fieldViews().allFields;
     }
 
-    private <T> CompletableFuture<List<T>> collectRecursively(Function<ReferenceTypeImpl, CompletableFuture<List<T>>> func, List<T> list, Set<ReferenceType> typeSet) {
-        if (!typeSet.contains(this)) {
-            typeSet.add(this);
-
-            return func.apply(this)
-                    .thenAccept(list::addAll)
-                    .thenCompose(__ -> inheritedTypesAsync())
-                    .thenCompose(types -> {
-                        CompletableFuture<List<T>> res = CompletableFuture.completedFuture(list);
-                        for (ReferenceType referenceType : types) {
-                            res = res.thenCombine(((ReferenceTypeImpl) referenceType).collectRecursively(func, list, typeSet),
-                                    (f, f2) -> list);
-                        }
-                        return res;
-                    });
-        }
-        return CompletableFuture.completedFuture(list);
+    @SuppressWarnings("unused")
+    public CompletableFuture<List<Field>> allFieldsAsync() {
+        return fieldViewsAsync().thenApply(views -> views.allFields);
     }
 
-    public List<Field> allFields() {
+    private List<Field> collectAllFields() {
         List<Field> fieldList = new ArrayList<>();
         Set<ReferenceType> typeSet = new HashSet<>();
         addAllFields(fieldList, typeSet);
         return fieldList;
     }
 
-    @SuppressWarnings("unused")
-    public CompletableFuture<List<Field>> allFieldsAsync() {
-        //TODO: may improve further, but need to preserve the order
-        List<Field> fieldList = Collections.synchronizedList(new ArrayList<>());
-        Set<ReferenceType> typeSet = Collections.synchronizedSet(new HashSet<>());
-        return addAllFieldsAsync(fieldList, typeSet);
-    }
-
     public Field fieldByName(String fieldName) {
-        List<Field> searchList = visibleFields();
-
-        for (Field f : searchList) {
-            if (f.name().equals(fieldName)) {
-                return f;
-            }
+        // declared fields come first in the visible fields and hide the inherited ones
+        List<Field> declared = declaredFields().byName(fieldName);
+        if (!declared.isEmpty()) {
+            return declared.get(0);
         }
         //throw new NoSuchFieldException("Field '" + fieldName + "' not found in " + name());
-        return null;
+        return fieldViews().visibleByName.get(fieldName);
     }
 
     private Method[] readMethods(JDWP.ReferenceType.Methods.MethodInfo[] jdwpMethods) {
@@ -537,9 +600,13 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     }
 
     public CompletableFuture<List<Method>> methodsAsync() {
-        Method[] methods = getFromCache(methodsRef);
+        return declaredMethodsAsync().thenApply(methods -> unmodifiableList(methods.array));
+    }
+
+    private CompletableFuture<Members<Method>> declaredMethodsAsync() {
+        Members<Method> methods = getFromCache(methodsRef, MetadataCache.Category.METHODS);
         if (methods != null) {
-            return CompletableFuture.completedFuture(unmodifiableList(methods));
+            return CompletableFuture.completedFuture(methods);
         }
         CompletableFuture<Method[]> array;
         if (!vm.canGet1_5LanguageFeatures()) {
@@ -549,15 +616,22 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             array = JDWP.ReferenceType.MethodsWithGeneric.processAsync(vm, this)
                     .thenApply(m -> readMethodsWithGeneric(m.declared));
         }
-        return array.thenApply(res -> {
-            res = tryToCache(methodsRef, res, n -> methodsRef = n);
-            return unmodifiableList(res);
-        });
+        return array.thenApply(this::cacheMethods);
+    }
+
+    private Members<Method> cacheMethods(Method[] array) {
+        Members<Method> methods = new Members<>(array, m -> ((MethodImpl) m).ref());
+        return tryToCache(methodsRef, MetadataCache.Category.METHODS, methods, methods.size(), n -> methodsRef = n);
     }
 
     public List<Method> methods() {
-        Method[] methods = getFromCache(methodsRef);
-        if (methods == null) {
+        return unmodifiableList(declaredMethods().array);
+    }
+
+    private Members<Method> declaredMethods() {
+        Members<Method> res = getFromCache(methodsRef, MetadataCache.Category.METHODS);
+        if (res == null) {
+            Method[] methods;
             if (!vm.canGet1_5LanguageFeatures()) {
                 JDWP.ReferenceType.Methods.MethodInfo[] declared;
                 try {
@@ -577,29 +651,36 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
                 }
                 methods = readMethodsWithGeneric(declared);
             }
-            methods = tryToCache(methodsRef, methods, n -> methodsRef = n);
+            res = cacheMethods(methods);
         }
-        return unmodifiableList(methods);
+        return res;
     }
 
-    private <T> T getFromCache(SoftReference<T> cache) {
+    private <T> T getFromCache(MetadataCache.Entry<T> cache, MetadataCache.Category category) {
         synchronized (cachesLock) {
-            return dereference(cache);
+            return vm.metadataCache().get(cache, category);
         }
     }
 
-    private <T> T tryToCache(SoftReference<T> cache, T value, Consumer<SoftReference<T>> setter) {
+    private <T> T tryToCache(MetadataCache.Entry<T> cache, MetadataCache.Category category,
+                             T value, long size, Consumer<MetadataCache.Entry<T>> setter) {
         synchronized (cachesLock) {
-            T current = dereference(cache);
+            T current = cache == null ? null : vm.metadataCache().get(cache, category);
             if (current != null) {
                 return current;
             } else {
-                setter.accept(vm.createSoftReference(value));
+                setter.accept(vm.metadataCache().replace(cache, category, this, value, size));
                 return value;
             }
         }
     }
 
+    private static long sdeSize(SDE sde) {
+        String extension = sde.sourceDebugExtension;
+        // the parsed tables take roughly as much as the text itself
+        return extension == null ? 0 : extension.length() * 4L;
+    }
+
     /*
      * Utility method used by subclasses to build lists of visible
      * methods.
@@ -612,6 +693,15 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     abstract void addVisibleMethods(Map<String, Method> methodMap, Set<InterfaceType> seenInterfaces);
 
     public List<Method> visibleMethods() {
+        return methodViews().visibleMethods;
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<List<Method>> visibleMethodsAsync() {
+        return methodViewsAsync().thenApply(views -> views.visibleMethods);
+    }
+
+    private List<Method> collectVisibleMethods(List<Method> allMethods) {
         /*
          * Build a collection of all visible methods. The hash
          * map allows us to do this efficiently by keying on the
@@ -626,24 +716,33 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
          * So, start over with allMethods() and use the hash map
          * to filter that ordered collection.
          */
-        List<Method> list = allMethods();
+        List<Method> list = new ArrayList<>(allMethods);
         list.retainAll(new HashSet<>(map.values()));
         return list;
     }
 
-    public abstract List<Method> allMethods();
+    public List<Method> allMethods() {
+        return methodViews().allMethods;
+    }
 
     public CompletableFuture<List<Method>> allMethodsAsync() {
-        List<Method> methodList = Collections.synchronizedList(new ArrayList<>());
-        Set<ReferenceType> typeSet = Collections.synchronizedSet(new HashSet<>());
-        return addAllMethodsAsync(methodList, typeSet);
+        return methodViewsAsync().thenApply(views -> views.allMethods);
     }
 
+    /**
+     * Returns the methods of this type and all its supertypes.
+     */
+    abstract List<Method> collectAllMethods();
+
     public List<Method> methodsByName(String name) {
-        List<Method> methods = visibleMethods();
+        return new ArrayList<>(methodViews().visibleByName.getOrDefault(name, List.of()));
+    }
+
+    public List<Method> methodsByName(String name, String signature) {
+        List<Method> methods = methodViews().visibleByName.getOrDefault(name, List.of());
         ArrayList<Method> retList = new ArrayList<>(methods.size());
         for (Method candidate : methods) {
-            if (candidate.name().equals(name)) {
+            if (candidate.signature().equals(signature)) {
                 retList.add(candidate);
             }
         }
@@ -651,17 +750,145 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         return retList;
     }
 
-    public List<Method> methodsByName(String name, String signature) {
-        List<Method> methods = visibleMethods();
-        ArrayList<Method> retList = new ArrayList<>(methods.size());
-        for (Method candidate : methods) {
-            if (candidate.name().equals(name) &&
-                candidate.signature().equals(signature)) {
-                retList.add(candidate);
+    /**
+     * Visible and all fields of this type and its supertypes.
+     * Valid until any type is redefined.
+     */
+    static final class FieldViews {
+        final int redefinitions;
+        final List<Field> visibleFields;
+        final List<Field> allFields;
+        final Map<String, Field> visibleByName;
+
+        FieldViews(int redefinitions, List<Field> visibleFields, List<Field> allFields) {
+            this.redefinitions = redefinitions;
+            this.visibleFields = Collections.unmodifiableList(visibleFields);
+            this.allFields = Collections.unmodifiableList(allFields);
+            visibleByName = new HashMap<>(visibleFields.size() * 4 / 3 + 1);
+            for (Field field : visibleFields) {
+                visibleByName.putIfAbsent(field.name(), field);
             }
         }
-        retList.trimToSize();
-        return retList;
+
+        long size() {
+            // the lists and the name index hold references to the cached mirrors
+            return visibleFields.size() * 64L + allFields.size() * 8L;
+        }
+    }
+
+    /**
+     * Visible and all methods of this type and its supertypes.
+     * Valid until any type is redefined.
+     */
+    static final class MethodViews {
+        final int redefinitions;
+        final List<Method> visibleMethods;
+        final List<Method> allMethods;
+        final Map<String, List<Method>> visibleByName;
+
+        MethodViews(int redefinitions, List<Method> visibleMethods, List<Method> allMethods) {
+            this.redefinitions = redefinitions;
+            this.visibleMethods = Collections.unmodifiableList(visibleMethods);
+            this.allMethods = Collections.unmodifiableList(allMethods);
+            visibleByName = new HashMap<>(visibleMethods.size() * 4 / 3 + 1);
+            for (Method method : visibleMethods) {
+                visibleByName.computeIfAbsent(method.name(), n -> new ArrayList<>(1)).add(method);
+            }
+        }
+
+        long size() {
+            // the lists and the name index hold references to the cached mirrors
+            return visibleMethods.size() * 64L + allMethods.size() * 8L;
+        }
+    }
+
+    private FieldViews fieldViews() {
+        FieldViews views = getFromCache(fieldViewsRef, MetadataCache.Category.FIELD_VIEWS);
+        int redefinitions = vm.metadataCache().redefinitions();
+        if (views == null || views.redefinitions != redefinitions) {
+            views = cacheFieldViews(redefinitions);
+        }
+        return views;
+    }
+
+    /**
+     * Same as {@link #fieldViews()}, but first fetches the fields of all
+     * the supertypes not cached yet with pipelined commands.
+     */
+    CompletableFuture<FieldViews> fieldViewsAsync() {
+        FieldViews views = getFromCache(fieldViewsRef, MetadataCache.Category.FIELD_VIEWS);
+        int redefinitions = vm.metadataCache().redefinitions();
+        if (views != null && views.redefinitions == redefinitions) {
+            return CompletableFuture.completedFuture(views);
+        }
+        return supertypesAsync(new HashSet<>()).thenCompose(types ->
+                CompletableFuture.allOf(types.stream()
+                                .map(ReferenceTypeImpl::declaredFieldsAsync)
+                                .toArray(CompletableFuture[]::new))
+                        .thenApply(__ -> cacheFieldViews(redefinitions)));
+    }
+
+    private MethodViews methodViews() {
+        MethodViews views = getFromCache(methodViewsRef, MetadataCache.Category.METHOD_VIEWS);
+        int redefinitions = vm.metadataCache().redefinitions();
+        if (views == null || views.redefinitions != redefinitions) {
+            views = cacheMethodViews(redefinitions);
+        }
+        return views;
+    }
+
+    /**
+     * Same as {@link #methodViews()}, but first fetches the methods of all
+     * the supertypes not cached yet with pipelined commands.
+     */
+    CompletableFuture<MethodViews> methodViewsAsync() {
+        MethodViews views = getFromCache(methodViewsRef, MetadataCache.Category.METHOD_VIEWS);
+        int redefinitions = vm.metadataCache().redefinitions();
+        if (views != null && views.redefinitions == redefinitions) {
+            return CompletableFuture.completedFuture(views);
+        }
+        return supertypesAsync(new HashSet<>()).thenCompose(types ->
+                CompletableFuture.allOf(types.stream()
+                                .map(ReferenceTypeImpl::declaredMethodsAsync)
+                                .toArray(CompletableFuture[]::new))
+                        .thenApply(__ -> cacheMethodViews(redefinitions)));
+    }
+
+    /**
+     * Returns this type and all its supertypes, the supertypes of each level
+     * are requested together.
+     */
+    private CompletableFuture<Set<ReferenceTypeImpl>> supertypesAsync(Set<ReferenceTypeImpl> seen) {
+        synchronized (seen) {
+            if (!seen.add(this)) {
+                return CompletableFuture.completedFuture(seen);
+            }
+        }
+        return inheritedTypesAsync().thenCompose(types -> CompletableFuture.allOf(types.stream()
+                        .map(t -> ((ReferenceTypeImpl) t).supertypesAsync(seen))
+                        .toArray(CompletableFuture[]::new)))
+                .thenApply(__ -> seen);
+    }
+
+    private FieldViews cacheFieldViews(int redefinitions) {
+        // the fields of the supertypes are cached, so this is mostly local
+        FieldViews views = new FieldViews(redefinitions, collectVisibleFields(), collectAllFields());
+        synchronized (cachesLock) {
+            fieldViewsRef = vm.metadataCache().replace(fieldViewsRef, MetadataCache.Category.FIELD_VIEWS, this,
+                                                       views, views.size());
+        }
+        return views;
+    }
+
+    private MethodViews cacheMethodViews(int redefinitions) {
+        // the methods of the supertypes are cached, so this is mostly local
+        List<Method> allMethods = collectAllMethods();
+        MethodViews views = new MethodViews(redefinitions, collectVisibleMethods(allMethods), allMethods);
+        synchronized (cachesLock) {
+            methodViewsRef = vm.metadataCache().replace(methodViewsRef, MetadataCache.Category.METHOD_VIEWS, this,
+                                                        views, views.size());
+        }
+        return views;
     }
 
     InterfaceType[] getInterfaces() {
@@ -688,23 +915,33 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     }
 
     public List<ReferenceType> nestedTypes() {
-        List<ReferenceType> nested = new ArrayList<>();
-        String outername = name();
-        int outerlen = outername.length();
-        vm.forEachClass(refType -> {
-            String name = refType.name();
-            int len = name.length();
-            /* The separator is historically '$' but could also be '#' */
-            if ( len > outerlen && name.startsWith(outername) ) {
-                char c = name.charAt(outerlen);
-                if ( c == '$' || c == '#' ) {
-                    nested.add(refType);
-                }
-            }
-        });
+        String signature = signature();
+        if (!signature.startsWith("L")) {
+            // arrays have no nested types
+            return new ArrayList<>();
+        }
+        String outer = signature.substring(0, signature.length() - 1);
+        /* The separator is historically '$' but could also be '#' */
+        List<ReferenceType> nested = vm.classesBySignaturePrefix(outer + '$');
+        nested.addAll(vm.classesBySignaturePrefix(outer + '#'));
         return nested;
     }
 
+    public CompletableFuture<List<ReferenceType>> nestedTypesAsync() {
+        String signature = signature();
+        if (!signature.startsWith("L")) {
+            // arrays have no nested types
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        String outer = signature.substring(0, signature.length() - 1);
+        return vm.classesBySignaturePrefixAsync(outer + '$')
+                .thenCombine(vm.classesBySignaturePrefixAsync(outer + '#'), (dollar, hash) -> {
+                    List<ReferenceType> nested = new ArrayList<>(dollar);
+                    nested.addAll(hash);
+                    return nested;
+                });
+    }
+
     @SuppressWarnings("unused")
     public CompletableFuture<Value> getValueAsync(Field sig) {
         return getValuesAsync(Collections.singletonList(sig)).thenApply(m -> m.get(sig));
@@ -998,7 +1235,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         if (!vm.canGetSourceDebugExtension()) {
             return NO_SDE_INFO_MARK;
         }
-        SDE sde = getFromCache(sdeRef);
+        SDE sde = getFromCache(sdeRef, MetadataCache.Category.SDE);
         if (sde == null) {
             String extension = null;
             try {
@@ -1006,25 +1243,25 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
                     process(vm, this).extension;
             } catch (JDWPException exc) {
                 if (exc.errorCode() != JDWP.Error.ABSENT_INFORMATION) {
-                    sdeRef = vm.createSoftReference(NO_SDE_INFO_MARK);
+                    sdeRef = vm.metadataCache().replace(sdeRef, MetadataCache.Category.SDE, this, NO_SDE_INFO_MARK, 0);
                     throw exc.toJDIException();
                 }
             }
             if (extension == null) {
                 sde = NO_SDE_INFO_MARK;
             } else {
-                sde = new SDE(extension);
+                sde = SDE.forExtension(extension);
             }
-            sde = tryToCache(sdeRef, sde, v -> sdeRef = v);
+            sde = tryToCache(sdeRef, MetadataCache.Category.SDE, sde, sdeSize(sde), v -> sdeRef = v);
         }
         return sde;
     }
 
-    private CompletableFuture<SDE> sourceDebugExtensionInfoAsync() {
+    CompletableFuture<SDE> sourceDebugExtensionInfoAsync() {
         if (!vm.canGetSourceDebugExtension()) {
             return CompletableFuture.completedFuture(NO_SDE_INFO_MARK);
         }
-        SDE sde = getFromCache(sdeRef);
+        SDE sde = getFromCache(sdeRef, MetadataCache.Category.SDE);
         if (sde != null) {
             return CompletableFuture.completedFuture(sde);
         }
@@ -1036,12 +1273,41 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
                     return null;
                 })
                 .thenApply(e -> {
-                    SDE res = (e == null) ? NO_SDE_INFO_MARK : new SDE(e.extension);
-                    res = tryToCache(sdeRef, res, v -> sdeRef = v);
+                    SDE res = (e == null) ? NO_SDE_INFO_MARK : SDE.forExtension(e.extension);
+                    res = tryToCache(sdeRef, MetadataCache.Category.SDE, res, sdeSize(res), v -> sdeRef = v);
                     return res;
                 });
     }
 
+    /**
+     * Sends the commands for all requested metadata that is not cached yet at once.
+     * Line tables are requested as soon as the methods are known.
+     * Errors are ignored here, they are reported when the metadata is accessed.
+     */
+    CompletableFuture<Void> prefetch(Set<VirtualMachineImpl.MetadataKind> kinds) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(kinds.size());
+        if (kinds.contains(VirtualMachineImpl.MetadataKind.FIELDS)) {
+            futures.add(fieldsAsync());
+        }
+        if (kinds.contains(VirtualMachineImpl.MetadataKind.SOURCE_NAME)) {
+            futures.add(baseSourceNameAsync());
+        }
+        if (kinds.contains(VirtualMachineImpl.MetadataKind.SOURCE_DEBUG_EXTENSION)) {
+            futures.add(sourceDebugExtensionInfoAsync());
+        }
+        if (kinds.contains(VirtualMachineImpl.MetadataKind.LINE_TABLES)) {
+            futures.add(methodsAsync().thenCompose(methods ->
+                    CompletableFuture.allOf(methods.stream()
+                            .map(m -> ((MethodImpl) m).prefetchLineTable().exceptionally(e -> null))
+                            .toArray(CompletableFuture[]::new))));
+        } else if (kinds.contains(VirtualMachineImpl.MetadataKind.METHODS)) {
+            futures.add(methodsAsync());
+        }
+        return CompletableFuture.allOf(futures.stream()
+                .map(f -> f.exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
     public List<String> availableStrata() {
         SDE sde = sourceDebugExtensionInfo();
         return sde.isValid() ? sde.availableStrata() : List.of(SDE.BASE_STRATUM_NAME);
@@ -1245,6 +1511,31 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         }
     }
 
+    /**
+     * Same as {@link #instances(long)}, but creates the mirrors and delivers them to
+     * the consumer one page at a time, see {@link ObjectIdStream}. The consumer is
+     * called on the JDI async thread and should not block.
+     *
+     * @return a future completed when all instances are consumed or the consumer stopped,
+     *         cancel it to stop the delivery
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<Void> instancesAsync(long maxInstances, int pageSize,
+                                                  ArrayReferenceImpl.ChunkConsumer<? super List<ObjectReference>> consumer) {
+        if (!vm.canGetInstanceInfo()) {
+            throw new UnsupportedOperationException(
+                "target does not support getting instances");
+        }
+        if (maxInstances < 0) {
+            throw new IllegalArgumentException("maxInstances is less than zero: "
+                                              + maxInstances);
+        }
+        ObjectIdStream.checkPageSize(pageSize);
+        int intMax = (int) Math.min(maxInstances, Integer.MAX_VALUE);
+        return ObjectIdStream.stream(vm, JDWP.ReferenceType.Instances.enqueueCommand(vm, this, intMax),
+                                     pageSize, consumer);
+    }
+
     private int[] getClassFileVersion() {
         if (!vm.canGetClassFileVersion()) {
             throw new UnsupportedOperationException();
@@ -1279,7 +1570,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             if (constantPoolBytesRef == null) {
                 return null;
             }
-            byte[] cpbytes = constantPoolBytesRef.get();
+            byte[] cpbytes = vm.metadataCache().get(constantPoolBytesRef, MetadataCache.Category.CONSTANT_POOL);
             if (cpbytes != null) {
                 return cpbytes;
             }
@@ -1300,7 +1591,8 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
         byte[] cpbytes;
         constanPoolCount = jdwpCPool.count;
         cpbytes = jdwpCPool.bytes;
-        constantPoolBytesRef = vm.createSoftReference(cpbytes);
+        constantPoolBytesRef = vm.metadataCache().replace(constantPoolBytesRef, MetadataCache.Category.CONSTANT_POOL,
+                this, cpbytes, cpbytes.length);
         constantPoolInfoGotten = true;
         return cpbytes;
     }
@@ -1313,7 +1605,7 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             if (constantPoolBytesRef == null) {
                 return CompletableFuture.completedFuture(null);
             }
-            byte[] cpbytes = constantPoolBytesRef.get();
+            byte[] cpbytes = vm.metadataCache().get(constantPoolBytesRef, MetadataCache.Category.CONSTANT_POOL);
             if (cpbytes != null) {
                 return CompletableFuture.completedFuture(cpbytes);
             }
@@ -1331,7 +1623,8 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
             }
             constanPoolCount = jdwpCPool.count;
             byte[] cpbytes = jdwpCPool.bytes;
-            constantPoolBytesRef = vm.createSoftReference(cpbytes);
+            constantPoolBytesRef = vm.metadataCache().replace(constantPoolBytesRef, MetadataCache.Category.CONSTANT_POOL,
+                    this, cpbytes, cpbytes.length);
             constantPoolInfoGotten = true;
             return cpbytes;
         });
@@ -1440,7 +1733,8 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     public abstract boolean isAssignableTo(ReferenceType type);
 
     boolean isAssignableFrom(ReferenceType type) {
-        return ((ReferenceTypeImpl)type).isAssignableTo(this);
+        // remembered, checked on every invocation
+        return vm.resolvedTypes().isAssignable((ReferenceTypeImpl) type, this);
     }
 
     boolean isAssignableFrom(ObjectReference object) {
@@ -1507,8 +1801,4 @@ public abstract class ReferenceTypeImpl extends TypeImpl implements ReferenceTyp
     static <T> T nullize(T value, T defaultValue) {
         return value != defaultValue ? value : null;
     }
-
-    static <T> T dereference(Reference<T> ref) {
-        return ref == null ? null : ref.get();
-    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ClassLoaderReference;
+import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.Type;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Types resolved from signatures in the context of a class loader, and the results of
+ * assignability checks, so that repeated invocations of a method do not query the
+ * target VM to validate the arguments.
+ * <p>
+ * Resolution failures are not cached, the type may be loaded later. The entries of an
+ * unloaded type are dropped. Methods keep their resolved types in a {@link MethodTypes}
+ * of the current {@link #generation()}, which changes on any unload or redefinition.
+ */
+class ResolvedTypes {
+    // the key of the boot loader, ClassLoaderReferenceImpl.NULL has no VM to compare with
+    private static final Object BOOT_LOADER = new Object();
+
+    private final VirtualMachineImpl vm;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // class loader -> signature -> type
+    private final Map<Object, Map<String, ReferenceTypeImpl>> typesByLoader = new ConcurrentHashMap<>();
+    // the loaders in which a type was resolved, to drop it on unload
+    private final Map<ReferenceTypeImpl, Set<Object>> loadersByType = new ConcurrentHashMap<>();
+    // source type -> destination type -> assignable
+    private final Map<ReferenceTypeImpl, Map<ReferenceTypeImpl, Boolean>> assignable = new ConcurrentHashMap<>();
+
+    /**
+     * The argument types then the return type of a method, null elements are not resolved yet.
+     */
+    static final class MethodTypes {
+        final int generation;
+        final Type[] types;
+
+        MethodTypes(int generation, int count) {
+            this.generation = generation;
+            this.types = new Type[count];
+        }
+    }
+
+    ResolvedTypes(VirtualMachineImpl vm) {
+        this.vm = vm;
+    }
+
+    int generation() {
+        return generation.get();
+    }
+
+    /**
+     * Resolves the signature in the class loader of the type, as {@link ReferenceTypeImpl#findType} does.
+     */
+    Type findType(ReferenceTypeImpl context, String signature) throws ClassNotLoadedException {
+        char tag = signature.charAt(0);
+        if (tag != JDWP.Tag.OBJECT && tag != JDWP.Tag.ARRAY) {
+            // primitive or void
+            return context.findType(signature);
+        }
+        ClassLoaderReference classLoader = context.classLoader();
+        Object loader = classLoader != null ? classLoader : BOOT_LOADER;
+        Map<String, ReferenceTypeImpl> types = typesByLoader.computeIfAbsent(loader, l -> new ConcurrentHashMap<>());
+        ReferenceTypeImpl type = types.get(signature);
+        if (type != null) {
+            return type;
+        }
+        type = (ReferenceTypeImpl) context.findType(signature);
+        // unloaded meanwhile, the removal may have run already
+        if (vm.isCachedType(type)) {
+            loadersByType.computeIfAbsent(type, t -> ConcurrentHashMap.newKeySet()).add(loader);
+            types.put(signature, type);
+            if ((vm.traceFlags & VirtualMachine.TRACE_REFTYPES) != 0) {
+                vm.printTrace("Resolved " + signature + " " + context.loaderString());
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Same as {@link ReferenceTypeImpl#isAssignableTo}, answered from the type hierarchy
+     * if it was built and remembered.
+     */
+    boolean isAssignable(ReferenceTypeImpl source, ReferenceTypeImpl destination) {
+        if (source.equals(destination)) {
+            return true;
+        }
+        Map<ReferenceTypeImpl, Boolean> known = assignable.computeIfAbsent(source, s -> new ConcurrentHashMap<>());
+        Boolean res = known.get(destination);
+        if (res == null) {
+            res = vm.typeHierarchy().isSubtype(source, destination);
+            if (res == null) {
+                res = source.isAssignableTo(destination);
+            }
+            known.put(destination, res);
+        }
+        return res;
+    }
+
+    void typeRemoved(ReferenceTypeImpl type) {
+        generation.incrementAndGet();
+        Set<Object> loaders = loadersByType.remove(type);
+        if (loaders != null) {
+            String signature = type.signature();
+            for (Object loader : loaders) {
+                Map<String, ReferenceTypeImpl> types = typesByLoader.get(loader);
+                if (types != null) {
+                    types.remove(signature, type);
+                }
+            }
+        }
+        assignable.remove(type);
+        assignable.values().forEach(known -> known.remove(type));
+    }
+
+    /**
+     * The supertypes do not change on redefinition, only the methods are resolved again.
+     */
+    void typeRedefined() {
+        generation.incrementAndGet();
+    }
+}
@@ -39,9 +39,9 @@
 package com.jetbrains.jdi;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.IntPredicate;
 
 public class SDE {
     private static final int INIT_SIZE_FILE = 3;
@@ -53,36 +53,36 @@ public class SDE {
     /* for C capatibility */
     static final String NullString = null;
 
+    /*
+     * Parsed SDEs shared by content across types and VMs. Keys are the
+     * sourceDebugExtension strings of the cached SDEs, so an entry goes
+     * away once its SDE is no longer used.
+     */
+    private static final Map<String, WeakReference<SDE>> sharedSDEs = new WeakHashMap<>();
+
     private static class FileTableRecord {
         int fileId;
         String sourceName;
         String sourcePath; // do not read - use accessor
-        boolean isConverted = false;
+        volatile String convertedSourcePath = null;
 
         /**
-         * Return the sourcePath, computing it if not set.
+         * Return the sourcePath, computing it from the type if not set.
          * If set, convert '/' in the sourcePath to the
          * local file separator.
+         * The computed path is not stored since the SDE may be
+         * shared by types from different packages.
          */
         String getSourcePath(ReferenceTypeImpl refType) {
-            if (!isConverted) {
-                if (sourcePath == null) {
-                    sourcePath = refType.baseSourceDir() + sourceName;
-                } else {
-                    StringBuilder sb = new StringBuilder();
-                    for (int i = 0; i < sourcePath.length(); ++i) {
-                        char ch = sourcePath.charAt(i);
-                        if (ch == '/') {
-                            sb.append(File.separatorChar);
-                        } else {
-                            sb.append(ch);
-                        }
-                    }
-                    sourcePath = sb.toString();
-                }
-                isConverted = true;
+            if (sourcePath == null) {
+                return refType.baseSourceDir() + sourceName;
             }
-            return sourcePath;
+            String converted = convertedSourcePath;
+            if (converted == null) {
+                converted = sourcePath.replace('/', File.separatorChar);
+                convertedSourcePath = converted;
+            }
+            return converted;
         }
     }
 
@@ -108,6 +108,80 @@ public class SDE {
         int lineIndex;
     }
 
+    /**
+     * Line ranges of a stratum sorted by their start, so that the
+     * line table records containing a line are found by a binary search.
+     */
+    private static class LineRangeIndex {
+        private final int[] starts;   // range starts, ascending
+        private final int[] ends;     // range ends
+        private final int[] maxEnds;  // the maximum of ends[0..i]
+        private final int[] records;  // line table index of each range
+
+        LineRangeIndex(LineTableRecord[] lineTable, int from, int to, boolean jpls) {
+            int count = to - from;
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                LineTableRecord record = lineTable[from + i];
+                int start = jpls ? record.jplsStart : record.njplsStart;
+                packed[i] = ((long) start << 32) | i;
+            }
+            Arrays.sort(packed);
+            starts = new int[count];
+            ends = new int[count];
+            maxEnds = new int[count];
+            records = new int[count];
+            for (int i = 0; i < count; i++) {
+                int lti = from + (int) packed[i];
+                LineTableRecord record = lineTable[lti];
+                starts[i] = (int) (packed[i] >> 32);
+                ends[i] = jpls ? record.jplsEnd : record.njplsEnd;
+                maxEnds[i] = i == 0 ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+                records[i] = lti;
+            }
+        }
+
+        /**
+         * Walks the ranges containing the line, from the latest start
+         * to the earliest, until the predicate returns true.
+         *
+         * @return true if the predicate accepted a record
+         */
+        boolean anyContaining(int line, IntPredicate recordPredicate) {
+            // the number of ranges starting at or before the line
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= line) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low - 1; i >= 0 && maxEnds[i] >= line; i--) {
+                if (ends[i] >= line && recordPredicate.test(records[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the first line table record containing the line, or -1
+         */
+        int firstContaining(int line) {
+            int[] result = {-1};
+            anyContaining(line, lti -> {
+                if (result[0] == -1 || lti < result[0]) {
+                    result[0] = lti;
+                }
+                return false;
+            });
+            return result[0];
+        }
+    }
+
     class Stratum {
         private final int sti; /* stratum index */
 
@@ -162,24 +236,16 @@ public class SDE {
         }
 
         boolean hasMappedLineTo(ReferenceTypeImpl refType, String targetSourcePath, int njplsLine) {
-            int lineIndexStart = stratumTable[sti].lineIndex;
-            int lineIndexEnd = stratumTable[sti + 1].lineIndex;
-            for (int lti = lineIndexStart; lti < lineIndexEnd; ++lti) {
-                LineTableRecord record = lineTable[lti];
-                if (record.containsMappedLine(njplsLine)) {
-                    int fti = stiFileTableIndex(sti, lti);
-                    if (fti == -1) {
-                        throw new InternalError("Bad SourceDebugExtension, no matching source id "
-                                + lineTable[lti].fileId + "\n" + sourceDebugExtension);
-                    }
-                    FileTableRecord ftr = fileTable[fti];
-                    String sourcePath = ftr.getSourcePath(refType);
-                    if (targetSourcePath.equals(sourcePath)) {
-                        return true;
-                    }
+            return lineRangeIndex(sti, false).anyContaining(njplsLine, lti -> {
+                int fti = stiFileTableIndex(sti, lti);
+                if (fti == -1) {
+                    throw new InternalError("Bad SourceDebugExtension, no matching source id "
+                            + lineTable[lti].fileId + "\n" + sourceDebugExtension);
                 }
-            }
-            return false;
+                FileTableRecord ftr = fileTable[fti];
+                String sourcePath = ftr.getSourcePath(refType);
+                return targetSourcePath.equals(sourcePath);
+            });
         }
 
         LineStratum lineStratum(ReferenceTypeImpl refType,
@@ -282,11 +348,31 @@ public class SDE {
     String defaultStratumId = null;
     boolean isValid = false;
 
+    // per stratum, created on first lookup
+    private volatile LineRangeIndex[] jplsRangeIndexes = null;
+    private volatile LineRangeIndex[] njplsRangeIndexes = null;
+
     public SDE(String sourceDebugExtension) {
         this.sourceDebugExtension = sourceDebugExtension;
         decode();
     }
 
+    /**
+     * Returns the parsed SDE for the extension, shared with all the
+     * types that have the same SourceDebugExtension content.
+     */
+    static SDE forExtension(String sourceDebugExtension) {
+        synchronized (sharedSDEs) {
+            WeakReference<SDE> ref = sharedSDEs.get(sourceDebugExtension);
+            SDE sde = ref == null ? null : ref.get();
+            if (sde == null) {
+                sde = new SDE(sourceDebugExtension);
+                sharedSDEs.put(sde.sourceDebugExtension, new WeakReference<>(sde));
+            }
+            return sde;
+        }
+    }
+
     SDE() {
         this.sourceDebugExtension = null;
         createProxyForAbsentSDE();
@@ -734,20 +820,30 @@ public class SDE {
     /***************** query functions ***********************/
 
     private int stiLineTableIndex(int sti, int jplsLine) {
-        int i;
-        int lineIndexStart;
-        int lineIndexEnd;
+        return lineRangeIndex(sti, true).firstContaining(jplsLine);
+    }
 
-        lineIndexStart = stratumTable[sti].lineIndex;
-        /* one past end */
-        lineIndexEnd = stratumTable[sti+1].lineIndex;
-        for (i = lineIndexStart; i < lineIndexEnd; ++i) {
-            if ((jplsLine >= lineTable[i].jplsStart) &&
-                            (jplsLine <= lineTable[i].jplsEnd)) {
-                return i;
+    private LineRangeIndex lineRangeIndex(int sti, boolean jpls) {
+        LineRangeIndex[] indexes = jpls ? jplsRangeIndexes : njplsRangeIndexes;
+        if (indexes == null) {
+            // the tables do not change after decoding, a race only creates a duplicate
+            indexes = new LineRangeIndex[stratumIndex];
+            if (jpls) {
+                jplsRangeIndexes = indexes;
+            } else {
+                njplsRangeIndexes = indexes;
             }
         }
-        return -1;
+        LineRangeIndex index = indexes[sti];
+        if (index == null) {
+            index = new LineRangeIndex(lineTable,
+                                       stratumTable[sti].lineIndex,
+                                       /* one past end */
+                                       stratumTable[sti+1].lineIndex,
+                                       jpls);
+            indexes[sti] = index;
+        }
+        return index;
     }
 
     private int stiLineNumber(int sti, int lti, int jplsLine) {
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ArrayType;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Maps source names and source paths of all strata, including the ones
+ * from SourceDebugExtension, to the loaded types compiled from them.
+ * <p>
+ * Built on the first query by fetching SourceFile and SourceDebugExtension
+ * of all loaded classes with pipelined commands, then kept up to date with
+ * class prepare, unload and redefine notifications.
+ */
+class SourceIndex {
+    private final VirtualMachineImpl vm;
+
+    // synchronized (this)
+    private final Map<String, Set<ReferenceType>> typesBySourceName = new HashMap<>();
+    private final Map<String, Set<ReferenceType>> typesBySourcePath = new HashMap<>();
+    private final Map<ReferenceType, Keys> keysByType = new HashMap<>();
+    private CompletableFuture<Void> built = null;
+    // the types being indexed after the build
+    private final Set<CompletableFuture<Void>> pending = new HashSet<>();
+
+    private static class Keys {
+        final Set<String> sourceNames;
+        final Set<String> sourcePaths;
+
+        Keys(Set<String> sourceNames, Set<String> sourcePaths) {
+            this.sourceNames = sourceNames;
+            this.sourcePaths = sourcePaths;
+        }
+    }
+
+    SourceIndex(VirtualMachineImpl vm) {
+        this.vm = vm;
+    }
+
+    CompletableFuture<List<ReferenceType>> typesBySourceNameAsync(String sourceName) {
+        return ensureUpToDate().thenApply(__ -> find(typesBySourceName, sourceName));
+    }
+
+    CompletableFuture<List<ReferenceType>> typesBySourcePathAsync(String sourcePath) {
+        return ensureUpToDate().thenApply(__ -> find(typesBySourcePath, sourcePath));
+    }
+
+    private synchronized List<ReferenceType> find(Map<String, Set<ReferenceType>> map, String key) {
+        Set<ReferenceType> types = map.get(key);
+        return types == null ? List.of() : List.copyOf(types);
+    }
+
+    private void track(CompletableFuture<Void> update) {
+        synchronized (this) {
+            pending.add(update);
+        }
+        update.whenComplete((r, e) -> {
+            synchronized (this) {
+                pending.remove(update);
+            }
+        });
+    }
+
+    /**
+     * Completes when the index is built and the updates started so far are applied.
+     */
+    private CompletableFuture<Void> ensureUpToDate() {
+        return ensureBuilt().thenCompose(__ -> {
+            CompletableFuture<?>[] updates;
+            synchronized (this) {
+                updates = pending.toArray(new CompletableFuture<?>[0]);
+            }
+            return CompletableFuture.allOf(updates);
+        });
+    }
+
+    private synchronized CompletableFuture<Void> ensureBuilt() {
+        if (built == null || built.isCompletedExceptionally()) {
+            if ((vm.traceFlags & VirtualMachine.TRACE_REFTYPES) != 0) {
+                vm.printTrace("Building source index");
+            }
+            built = vm.allClassesAsync().thenCompose(types ->
+                    CompletableFuture.allOf(types.stream()
+                            .map(t -> indexAsync((ReferenceTypeImpl) t))
+                            .toArray(CompletableFuture[]::new)));
+        }
+        return built;
+    }
+
+    private synchronized boolean isStarted() {
+        return built != null;
+    }
+
+    /**
+     * A new type was prepared.
+     */
+    void typePrepared(ReferenceTypeImpl type) {
+        if (isStarted()) {
+            track(indexAsync(type));
+        }
+    }
+
+    /**
+     * The type was redefined, its SourceDebugExtension may have changed.
+     */
+    void typeRedefined(ReferenceTypeImpl type) {
+        if (isStarted()) {
+            typeRemoved(type);
+            track(indexAsync(type));
+        }
+    }
+
+    synchronized void typeRemoved(ReferenceTypeImpl type) {
+        Keys keys = keysByType.remove(type);
+        if (keys != null) {
+            remove(typesBySourceName, keys.sourceNames, type);
+            remove(typesBySourcePath, keys.sourcePaths, type);
+        }
+    }
+
+    private static void remove(Map<String, Set<ReferenceType>> map, Set<String> keys, ReferenceType type) {
+        for (String key : keys) {
+            Set<ReferenceType> types = map.get(key);
+            if (types != null) {
+                types.remove(type);
+                if (types.isEmpty()) {
+                    map.remove(key);
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Void> indexAsync(ReferenceTypeImpl type) {
+        if (type instanceof ArrayType) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // both commands are sent before any reply is awaited
+        CompletableFuture<String> sourceName = type.baseSourceNameAsync().exceptionally(e -> null);
+        CompletableFuture<SDE> sde = type.sourceDebugExtensionInfoAsync().exceptionally(e -> null);
+        return sourceName.thenCombine(sde, (name, info) -> {
+            Set<String> sourceNames = new HashSet<>();
+            Set<String> sourcePaths = new HashSet<>();
+            if (name != null) {
+                sourceNames.add(name);
+                sourcePaths.add(type.baseSourceDir() + name);
+            }
+            if (info != null && info.isValid()) {
+                for (String stratumID : info.availableStrata()) {
+                    SDE.Stratum stratum = info.stratum(stratumID);
+                    sourceNames.addAll(stratum.sourceNames(type));
+                    sourcePaths.addAll(stratum.sourcePaths(type));
+                }
+            }
+            add(type, new Keys(sourceNames, sourcePaths));
+            return null;
+        });
+    }
+
+    private synchronized void add(ReferenceTypeImpl type, Keys keys) {
+        // the type may have been unloaded while its info was being fetched
+        if (!vm.isCachedType(type)) {
+            return;
+        }
+        typeRemoved(type);
+        keysByType.put(type, keys);
+        for (String name : keys.sourceNames) {
+            typesBySourceName.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(type);
+        }
+        for (String path : keys.sourcePaths) {
+            typesBySourcePath.computeIfAbsent(path, k -> new LinkedHashSet<>()).add(type);
+        }
+    }
+}
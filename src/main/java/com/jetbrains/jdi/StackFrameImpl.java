@@ -69,6 +69,8 @@ public class StackFrameImpl extends MirrorImpl
         this.id = id;
         this.location = location;
         thread.addListener(this);
+        // keep the metadata of the executing type cached while the frame is alive
+        this.vm.metadataCache().pin(thread, (ReferenceTypeImpl) location.declaringType());
     }
 
     /*
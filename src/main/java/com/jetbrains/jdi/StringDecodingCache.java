@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Deduplicates the short strings decoded from JDWP replies, such as
+ * type signatures and member names, which are received over and over.
+ * <p>
+ * A direct mapped table of the last decoded string per slot: a hit on an ASCII
+ * string is compared with the reply bytes and returned without decoding.
+ * Races only lose a slot update, strings are immutable.
+ */
+class StringDecodingCache {
+    // longer strings are rarely repeated, e.g. string values
+    private static final int MAX_LENGTH = 256;
+    private static final int SIZE = 8192; // power of two
+
+    private final String[] table = new String[SIZE];
+
+    String decode(byte[] data, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(data, offset, length, UTF_8);
+        }
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            ascii &= b >= 0;
+            hash = 31 * hash + b;
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String cached = table[slot];
+        if (ascii && cached != null && matchesAscii(cached, data, offset, length)) {
+            return cached;
+        }
+        String decoded = new String(data, offset, length, UTF_8);
+        if (!ascii && decoded.equals(cached)) {
+            return cached;
+        }
+        table[slot] = decoded;
+        return decoded;
+    }
+
+    private static boolean matchesAscii(String string, byte[] data, int offset, int length) {
+        if (string.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
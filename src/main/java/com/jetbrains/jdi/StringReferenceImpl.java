@@ -38,13 +38,196 @@
 
 package com.jetbrains.jdi;
 
+import com.sun.jdi.ByteValue;
+import com.sun.jdi.Field;
+import com.sun.jdi.IntegerValue;
+import com.sun.jdi.ObjectCollectedException;
+import com.sun.jdi.ReferenceType;
 import com.sun.jdi.StringReference;
+import com.sun.jdi.Value;
 import com.sun.jdi.VirtualMachine;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
 public class StringReferenceImpl extends ObjectReferenceImpl implements StringReference {
     private volatile String value;
+    private volatile int length = -1;
+    // the backing array, NO_CONTENTS if the string cannot be read in parts
+    private volatile Contents contents = null;
+
+    private static final int LATIN1 = 0;
+    private static final int UTF16 = 1;
+    private static final int CHARS = -1; // char[] value, before JDK 9
+
+    /**
+     * How the target VM stores the contents of strings, to read parts of them.
+     * Strings are read whole when the layout is unknown.
+     */
+    static final class Layout {
+        static final Layout UNKNOWN = new Layout(null, null, -1);
+
+        final Field valueField;  // byte[] or char[]
+        final Field coderField;  // null for char[]
+        final int hiByteShift;   // byte order of UTF16 byte[], -1 if unknown
+
+        private Layout(Field valueField, Field coderField, int hiByteShift) {
+            this.valueField = valueField;
+            this.coderField = coderField;
+            this.hiByteShift = hiByteShift;
+        }
+
+        /**
+         * Resolves the layout with sync commands, must not be called on the reader thread.
+         */
+        static Layout of(VirtualMachineImpl vm, ReferenceType stringType) {
+            Field valueField = stringType.fieldByName("value");
+            if (valueField == null || valueField.isStatic()) {
+                return UNKNOWN;
+            }
+            if ("[C".equals(valueField.signature())) {
+                return new Layout(valueField, null, -1);
+            }
+            Field coderField = stringType.fieldByName("coder");
+            if (!"[B".equals(valueField.signature()) || coderField == null) {
+                return UNKNOWN;
+            }
+            int hiByteShift = -1;
+            for (ReferenceType utf16 : vm.classesByName("java.lang.StringUTF16")) {
+                Field shiftField = utf16.fieldByName("HI_BYTE_SHIFT");
+                if (shiftField != null && shiftField.isStatic()) {
+                    Value shift = utf16.getValue(shiftField);
+                    if (shift instanceof IntegerValue) {
+                        hiByteShift = ((IntegerValue) shift).value();
+                    }
+                }
+            }
+            return new Layout(valueField, coderField, hiByteShift);
+        }
+
+        static CompletableFuture<Layout> ofAsync(VirtualMachineImpl vm, ReferenceTypeImpl stringType) {
+            return stringType.fieldsAsync().thenCompose(fields -> {
+                Field valueField = instanceField(fields, "value");
+                if (valueField == null) {
+                    return CompletableFuture.completedFuture(UNKNOWN);
+                }
+                if ("[C".equals(valueField.signature())) {
+                    return CompletableFuture.completedFuture(new Layout(valueField, null, -1));
+                }
+                Field coderField = instanceField(fields, "coder");
+                if (!"[B".equals(valueField.signature()) || coderField == null) {
+                    return CompletableFuture.completedFuture(UNKNOWN);
+                }
+                return vm.classesBySignatureAsync("Ljava/lang/StringUTF16;")
+                        .thenCompose(Layout::hiByteShiftAsync)
+                        .thenApply(hiByteShift -> new Layout(valueField, coderField, hiByteShift));
+            });
+        }
+
+        private static Field instanceField(List<Field> fields, String name) {
+            for (Field field : fields) {
+                if (field.name().equals(name) && !field.isStatic()) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        private static CompletableFuture<Integer> hiByteShiftAsync(List<ReferenceType> utf16Types) {
+            if (utf16Types.isEmpty()) {
+                return CompletableFuture.completedFuture(-1);
+            }
+            ReferenceTypeImpl utf16 = (ReferenceTypeImpl) utf16Types.get(utf16Types.size() - 1);
+            return utf16.fieldsAsync().thenCompose(fields -> {
+                for (Field field : fields) {
+                    if (field.name().equals("HI_BYTE_SHIFT") && field.isStatic()) {
+                        return utf16.getValueAsync(field).thenApply(shift ->
+                                shift instanceof IntegerValue ? ((IntegerValue) shift).value() : -1);
+                    }
+                }
+                return CompletableFuture.completedFuture(-1);
+            });
+        }
+
+        /**
+         * @return the backing array of a string with the values of the layout fields,
+         *         or null if it cannot be read in parts
+         */
+        Contents contents(Map<Field, Value> values) {
+            ArrayReferenceImpl array = (ArrayReferenceImpl) values.get(valueField);
+            if (array == null) {
+                return null;
+            }
+            int coder = coderField == null
+                    ? CHARS
+                    : ((ByteValue) values.get(coderField)).value();
+            if (coder == UTF16 && hiByteShift == -1) {
+                // unknown byte order
+                return null;
+            }
+            return new Contents(array, coder, hiByteShift);
+        }
+
+        List<Field> fields() {
+            return coderField == null ? List.of(valueField) : List.of(valueField, coderField);
+        }
+    }
+
+    /**
+     * The backing array of this string and how to decode it.
+     */
+    private static final class Contents {
+        final ArrayReferenceImpl array;
+        final int coder;
+        final int hiByteShift;
+
+        Contents(ArrayReferenceImpl array, int coder, int hiByteShift) {
+            this.array = array;
+            this.coder = coder;
+            this.hiByteShift = hiByteShift;
+        }
+
+        static final Contents NO_CONTENTS = new Contents(null, CHARS, -1);
+
+        int charCount(int arrayLength) {
+            return coder == UTF16 ? arrayLength >> 1 : arrayLength;
+        }
+
+        String chars(int offset, int length) {
+            switch (coder) {
+                case CHARS:
+                    return new String(array.getChars(offset, length));
+                case LATIN1:
+                    return new String(array.getBytes(offset, length), ISO_8859_1);
+                default:
+                    return decodeUtf16(array.getBytes(offset * 2, length * 2), length);
+            }
+        }
+
+        CompletableFuture<String> charsAsync(int offset, int length) {
+            switch (coder) {
+                case CHARS:
+                    return array.getCharsAsync(offset, length).thenApply(String::new);
+                case LATIN1:
+                    return array.getBytesAsync(offset, length).thenApply(bytes -> new String(bytes, ISO_8859_1));
+                default:
+                    return array.getBytesAsync(offset * 2, length * 2).thenApply(bytes -> decodeUtf16(bytes, length));
+            }
+        }
+
+        private String decodeUtf16(byte[] bytes, int length) {
+            int loByteShift = 8 - hiByteShift;
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (((bytes[2 * i] & 0xff) << hiByteShift) |
+                                   ((bytes[2 * i + 1] & 0xff) << loByteShift));
+            }
+            return new String(chars);
+        }
+    }
 
     StringReferenceImpl(VirtualMachine aVm, long aRef) {
         super(aVm, aRef);
@@ -72,6 +255,159 @@ public class StringReferenceImpl extends ObjectReferenceImpl implements StringRe
         return value;
     }
 
+    /**
+     * Returns the number of chars of the string without transferring it,
+     * by reading the length of its backing array where possible.
+     */
+    public int length() {
+        String v = value;
+        if (v != null) {
+            return v.length();
+        }
+        if (length != -1) {
+            return length;
+        }
+        Contents c = contents();
+        if (c == null) {
+            return value().length();
+        }
+        return length = c.charCount(c.array.length());
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<Integer> lengthAsync() {
+        String v = value;
+        if (v != null) {
+            return CompletableFuture.completedFuture(v.length());
+        }
+        if (length != -1) {
+            return CompletableFuture.completedFuture(length);
+        }
+        return contentsAsync().thenCompose(contents -> {
+            if (contents == null) {
+                return valueAsync().thenApply(String::length);
+            }
+            return contents.array.lengthAsync().thenApply(arrayLength -> length = contents.charCount(arrayLength));
+        });
+    }
+
+    /**
+     * Returns {@code value().substring(offset, offset + length)}, transferring only that part
+     * of the string where the layout of strings in the target VM is known.
+     * A length of -1 means the rest of the string.
+     */
+    public String value(int offset, int length) {
+        String v = value;
+        if (v != null) {
+            return substring(v, offset, length);
+        }
+        try {
+            Contents c = contents();
+            if (c == null) {
+                return substring(value(), offset, length);
+            }
+            int count = c.charCount(c.array.length());
+            this.length = count;
+            int len = length == -1 ? count - offset : length;
+            checkRange(offset, len, count);
+            return len == 0 ? "" : c.chars(offset, len);
+        } catch (ObjectCollectedException e) {
+            // the backing array may have been replaced, see valueAsync
+            contents = null;
+            return substring(value(), offset, length);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<String> valueAsync(int offset, int length) {
+        String v = value;
+        if (v != null) {
+            return CompletableFuture.completedFuture(substring(v, offset, length));
+        }
+        return contentsAsync().thenCompose(contents -> {
+            if (contents == null) {
+                return valueAsync().thenApply(full -> substring(full, offset, length));
+            }
+            return contents.array.lengthAsync().thenCompose(arrayLength -> {
+                int count = contents.charCount(arrayLength);
+                this.length = count;
+                int len = length == -1 ? count - offset : length;
+                checkRange(offset, len, count);
+                if (len == 0) {
+                    return CompletableFuture.completedFuture("");
+                }
+                return contents.charsAsync(offset, len);
+            });
+        }).exceptionallyCompose(throwable -> {
+            if (AsyncUtils.unwrap(throwable) instanceof ObjectCollectedException) {
+                // the backing array may have been replaced, e.g. by string deduplication,
+                // fails the same way if the string was collected
+                contents = null;
+                return valueAsync().thenApply(full -> substring(full, offset, length));
+            }
+            return CompletableFuture.failedFuture(AsyncUtils.unwrap(throwable));
+        });
+    }
+
+    /**
+     * Returns at most {@code maxLength} first chars of the string, e.g. for a preview.
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<String> prefixAsync(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Negative length: " + maxLength);
+        }
+        return lengthAsync().thenCompose(count -> valueAsync(0, Math.min(maxLength, count)));
+    }
+
+    private static String substring(String string, int offset, int length) {
+        int len = length == -1 ? string.length() - offset : length;
+        checkRange(offset, len, string.length());
+        return string.substring(offset, offset + len);
+    }
+
+    private static void checkRange(int offset, int length, int count) {
+        if (offset < 0 || length < 0 || offset > count - length) {
+            throw new StringIndexOutOfBoundsException(
+                    "offset " + offset + ", length " + length + ", string length " + count);
+        }
+    }
+
+    /**
+     * @return the backing array of the string, or null if it cannot be read in parts
+     */
+    private Contents contents() {
+        Contents cached = contents;
+        if (cached != null) {
+            return cached == Contents.NO_CONTENTS ? null : cached;
+        }
+        Layout layout = vm.stringLayout((ReferenceTypeImpl) referenceType());
+        Contents res = layout.valueField == null ? null : layout.contents(getValues(layout.fields()));
+        // a string never changes, the array is kept as long as the mirror
+        contents = res != null ? res : Contents.NO_CONTENTS;
+        return res;
+    }
+
+    private CompletableFuture<Contents> contentsAsync() {
+        Contents cached = contents;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached == Contents.NO_CONTENTS ? null : cached);
+        }
+        return referenceTypeAsync()
+                .thenCompose(type -> vm.stringLayoutAsync((ReferenceTypeImpl) type))
+                .thenCompose(layout -> {
+                    if (layout.valueField == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return getValuesAsync(layout.fields()).thenApply(layout::contents);
+                })
+                .thenApply(res -> {
+                    // a string never changes, the array is kept as long as the mirror
+                    contents = res != null ? res : Contents.NO_CONTENTS;
+                    return res;
+                });
+    }
+
     public String toString() {
         return "\"" + value() + "\"";
     }
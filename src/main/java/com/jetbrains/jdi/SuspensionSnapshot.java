@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Immutable values read from the suspended VM: the top frames of threads, their visible
+ * variables and values, the fields of their {@code this} objects and the strings among all these.
+ * <p>
+ * Captured with pipelined commands by {@link VirtualMachineImpl#captureSuspensionSnapshotAsync},
+ * then read through {@link VirtualMachineImpl#suspensionSnapshot()} without any JDWP traffic or locking.
+ * The snapshot is discarded as a whole when the VM or any thread is resumed. A frame, an object
+ * or a string which cannot be read is left out, the rest is still captured.
+ */
+public final class SuspensionSnapshot {
+    static final SuspensionSnapshot EMPTY = new SuspensionSnapshot(Map.of(), Map.of(), Map.of(), Map.of());
+
+    public static final class FrameData {
+        private final List<LocalVariable> visibleVariables;
+        private final Map<LocalVariable, Value> values;
+        private final ObjectReference thisObject;
+
+        FrameData(List<LocalVariable> visibleVariables, Map<LocalVariable, Value> values, ObjectReference thisObject) {
+            this.visibleVariables = Collections.unmodifiableList(visibleVariables);
+            this.values = Collections.unmodifiableMap(values);
+            this.thisObject = thisObject;
+        }
+
+        /**
+         * @return the visible variables, empty if the method has no local variable information
+         */
+        public List<LocalVariable> visibleVariables() {
+            return visibleVariables;
+        }
+
+        public Map<LocalVariable, Value> values() {
+            return values;
+        }
+
+        /**
+         * @return the {@code this} object, null for static and native methods
+         */
+        public ObjectReference thisObject() {
+            return thisObject;
+        }
+    }
+
+    private final Map<ThreadReference, List<StackFrame>> frames;
+    private final Map<StackFrame, FrameData> frameData;
+    private final Map<ObjectReference, Map<Field, Value>> fieldValues;
+    private final Map<StringReference, String> stringValues;
+
+    private SuspensionSnapshot(Map<ThreadReference, List<StackFrame>> frames,
+                               Map<StackFrame, FrameData> frameData,
+                               Map<ObjectReference, Map<Field, Value>> fieldValues,
+                               Map<StringReference, String> stringValues) {
+        this.frames = frames;
+        this.frameData = frameData;
+        this.fieldValues = fieldValues;
+        this.stringValues = stringValues;
+    }
+
+    /**
+     * @return the captured top frames of the thread, or null if the thread was not captured
+     */
+    public List<StackFrame> frames(ThreadReference thread) {
+        return frames.get(thread);
+    }
+
+    /**
+     * @return the captured data of the frame, or null if the frame was not captured
+     */
+    public FrameData frameData(StackFrame frame) {
+        return frameData.get(frame);
+    }
+
+    /**
+     * @return the instance field values of a captured {@code this} object, or null
+     */
+    public Map<Field, Value> fieldValues(ObjectReference object) {
+        return fieldValues.get(object);
+    }
+
+    /**
+     * @return the value of a captured string, or null
+     */
+    public String stringValue(StringReference string) {
+        return stringValues.get(string);
+    }
+
+    /**
+     * @return a new snapshot with the contents of both
+     */
+    SuspensionSnapshot merge(SuspensionSnapshot other) {
+        return new SuspensionSnapshot(merge(frames, other.frames),
+                                      merge(frameData, other.frameData),
+                                      merge(fieldValues, other.fieldValues),
+                                      merge(stringValues, other.stringValues));
+    }
+
+    private static <K, V> Map<K, V> merge(Map<K, V> first, Map<K, V> second) {
+        Map<K, V> result = new HashMap<>(first);
+        result.putAll(second);
+        return Collections.unmodifiableMap(result);
+    }
+
+    static CompletableFuture<SuspensionSnapshot> captureAsync(VirtualMachineImpl vm,
+                                                              ThreadReferenceImpl thread,
+                                                              int frameCount) {
+        int epoch = vm.state().suspensionEpoch();
+        // only the top frames, not the whole stack
+        CompletableFuture<List<StackFrame>> topFrames = thread.frameCountAsync()
+                .thenCompose(count -> thread.framesAsync(0, Math.min(frameCount, count)));
+        return topFrames.thenCompose(fetched -> {
+            List<StackFrame> frames = List.copyOf(fetched);
+            List<CompletableFuture<FrameData>> data = new ArrayList<>(frames.size());
+            for (StackFrame frame : frames) {
+                data.add(frameDataAsync((StackFrameImpl) frame).exceptionally(throwable -> {
+                    // e.g. an opaque frame, the other frames are still captured
+                    if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                        vm.printTrace("Frame not captured: " + frame + ": " + AsyncUtils.unwrap(throwable));
+                    }
+                    return null;
+                }));
+            }
+            return CompletableFuture.allOf(data.toArray(new CompletableFuture<?>[0])).thenCompose(__ -> {
+                Map<StackFrame, FrameData> frameData = new HashMap<>();
+                Set<ObjectReference> thisObjects = new LinkedHashSet<>();
+                for (int i = 0; i < frames.size(); i++) {
+                    FrameData d = data.get(i).join();
+                    if (d == null) {
+                        continue;
+                    }
+                    frameData.put(frames.get(i), d);
+                    if (d.thisObject != null) {
+                        thisObjects.add(d.thisObject);
+                    }
+                }
+                return fieldValuesAsync(vm, thisObjects).thenCompose(fieldValues -> {
+                    Set<StringReferenceImpl> strings = new LinkedHashSet<>();
+                    frameData.values().forEach(d -> collectStrings(d.values.values(), strings));
+                    fieldValues.values().forEach(values -> collectStrings(values.values(), strings));
+                    return stringValuesAsync(vm, strings).thenApply(stringValues ->
+                            new SuspensionSnapshot(Map.of(thread, frames),
+                                                   Collections.unmodifiableMap(frameData),
+                                                   Collections.unmodifiableMap(fieldValues),
+                                                   Collections.unmodifiableMap(stringValues)));
+                });
+            });
+        }).thenApply(snapshot -> vm.state().addToSuspensionSnapshot(epoch, snapshot));
+    }
+
+    private static CompletableFuture<FrameData> frameDataAsync(StackFrameImpl frame) {
+        // both commands are sent before any reply is awaited
+        CompletableFuture<ObjectReference> thisObject = frame.thisObjectAsync();
+        CompletableFuture<Map<LocalVariable, Value>> values = frame.visibleVariablesAsync()
+                .exceptionally(throwable -> {
+                    throwable = AsyncUtils.unwrap(throwable);
+                    if (throwable instanceof AbsentInformationException) {
+                        return List.of();
+                    }
+                    throw new CompletionException(throwable);
+                })
+                .thenCompose(variables -> variables.isEmpty()
+                        ? CompletableFuture.completedFuture(Map.of())
+                        : frame.getValuesAsync(variables));
+        return values.thenCombine(thisObject, (v, t) -> {
+            List<LocalVariable> variables = new ArrayList<>(v.keySet());
+            Collections.sort(variables);
+            return new FrameData(variables, v, t);
+        });
+    }
+
+    /**
+     * An object which fails, e.g. collected meanwhile, is left out.
+     */
+    private static CompletableFuture<Map<ObjectReference, Map<Field, Value>>> fieldValuesAsync(
+            VirtualMachineImpl vm, Collection<ObjectReference> objects) {
+        Map<ObjectReference, CompletableFuture<Map<Field, Value>>> futures = new LinkedHashMap<>();
+        for (ObjectReference object : objects) {
+            futures.put(object, ((ObjectReferenceImpl) object).referenceTypeAsync()
+                    .thenCompose(type -> ((ReferenceTypeImpl) type).allFieldsAsync())
+                    .thenCompose(fields -> {
+                        List<Field> instanceFields = new ArrayList<>(fields.size());
+                        for (Field field : fields) {
+                            if (!field.isStatic()) {
+                                instanceFields.add(field);
+                            }
+                        }
+                        return ((ObjectReferenceImpl) object).getValuesAsync(instanceFields);
+                    })
+                    .<Map<Field, Value>>thenApply(Collections::unmodifiableMap)
+                    .exceptionally(throwable -> {
+                        traceNotCaptured(vm, object, throwable);
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+            Map<ObjectReference, Map<Field, Value>> result = new HashMap<>();
+            futures.forEach((object, values) -> {
+                if (values.join() != null) {
+                    result.put(object, values.join());
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Same as {@link VirtualMachineImpl#stringValuesAsync}, a string which fails is left out.
+     */
+    private static CompletableFuture<Map<StringReference, String>> stringValuesAsync(
+            VirtualMachineImpl vm, Collection<StringReferenceImpl> strings) {
+        Map<StringReference, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (StringReferenceImpl string : strings) {
+            futures.put(string, string.valueAsync().exceptionally(throwable -> {
+                traceNotCaptured(vm, string, throwable);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+            Map<StringReference, String> result = new HashMap<>();
+            futures.forEach((string, value) -> {
+                if (value.join() != null) {
+                    result.put(string, value.join());
+                }
+            });
+            return result;
+        });
+    }
+
+    private static void traceNotCaptured(VirtualMachineImpl vm, ObjectReference object, Throwable throwable) {
+        if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+            vm.printTrace("Object not captured: " + object.uniqueID() + ": " + AsyncUtils.unwrap(throwable));
+        }
+    }
+
+    private static void collectStrings(Collection<Value> values, Set<StringReferenceImpl> strings) {
+        for (Value value : values) {
+            if (value instanceof StringReferenceImpl) {
+                strings.add((StringReferenceImpl) value);
+            }
+        }
+    }
+}
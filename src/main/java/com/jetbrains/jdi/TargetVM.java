@@ -59,6 +59,8 @@ public class TargetVM {
     private EventController eventController = null;
     private boolean eventsHeld = false;
     private CompletableFuture<Long> latencyRequest = null;
+    // the event sets waiting for their prefetch, accessed by the reader thread only
+    private CompletableFuture<Void> pendingEventSets = CompletableFuture.completedFuture(null);
 
     // this executor used in case sync commands are used in async processing
     final ExecutorService asyncExecutor;
@@ -69,6 +71,8 @@ public class TargetVM {
      */
     private static final int OVERLOADED_QUEUE = 10000;
     private static final int UNDERLOADED_QUEUE = 100;
+    // how long an event set may wait for its prefetch
+    private static final long PREFETCH_TIMEOUT_MILLIS = 1000;
 
     TargetVM(VirtualMachineImpl vm, Connection connection) {
         this.vm = vm;
@@ -261,8 +265,27 @@ public class TargetVM {
      * reading thread.
      */
     protected void handleEventCmdSet(Packet p) {
-        EventSet eventSet = new EventSetImpl(vm, p);
-        queueEventSet(eventSet);
+        EventSetImpl eventSet = new EventSetImpl(vm, p);
+        CompletableFuture<Void> prefetched = null;
+        if (vm.eventRequestManagerImpl().hasPrefetchPlans()) {
+            try {
+                prefetched = eventSet.prefetchAsync();
+            } catch (VMDisconnectedException e) {
+                // nothing to prefetch from
+            }
+        }
+        if (prefetched != null) {
+            // the replies may be held by a client blocked on the event queue,
+            // queue the set without the data rather than never
+            prefetched = prefetched.completeOnTimeout(null, PREFETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            pendingEventSets = CompletableFuture.allOf(pendingEventSets, prefetched)
+                    .whenComplete((r, e) -> queueEventSet(eventSet));
+        } else if (pendingEventSets.isDone()) {
+            queueEventSet(eventSet);
+        } else {
+            // keep the order of the event sets
+            pendingEventSets = pendingEventSets.whenComplete((r, e) -> queueEventSet(eventSet));
+        }
     }
 
     private EventController eventController() {
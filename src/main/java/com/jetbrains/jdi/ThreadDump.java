@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Immutable snapshot of all threads of the VM, with their names, statuses
+ * and, for suspended threads, stack frames.
+ * <p>
+ * Created by {@link VirtualMachineImpl#threadDumpAsync}, which sends the commands
+ * for all threads before waiting for any reply, so the dump costs a few round trips
+ * regardless of the number of threads.
+ */
+public final class ThreadDump {
+    public enum Option {
+        /** Frames of the suspended threads */
+        FRAMES,
+        /** Line tables of the methods on the stacks, implies {@link #FRAMES} */
+        LINE_TABLES
+    }
+
+    public static final class ThreadInfo {
+        private final ThreadReference thread;
+        private final String name;
+        private final int status;
+        private final boolean suspended;
+        private final List<StackFrame> frames;
+
+        ThreadInfo(ThreadReference thread, String name, int status, boolean suspended, List<StackFrame> frames) {
+            this.thread = thread;
+            this.name = name;
+            this.status = status;
+            this.suspended = suspended;
+            this.frames = frames;
+        }
+
+        public ThreadReference thread() {
+            return thread;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return one of the {@code ThreadReference.THREAD_STATUS_*} constants
+         */
+        public int status() {
+            return status;
+        }
+
+        public boolean isSuspended() {
+            return suspended;
+        }
+
+        /**
+         * @return the frames of the thread, empty if the thread was not suspended
+         * or the frames were not requested
+         */
+        public List<StackFrame> frames() {
+            return frames;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + name + "\" status=" + status + (suspended ? " suspended" : "") +
+                    ", frames=" + frames.size();
+        }
+    }
+
+    private final List<ThreadInfo> threads;
+
+    private ThreadDump(List<ThreadInfo> threads) {
+        this.threads = Collections.unmodifiableList(threads);
+    }
+
+    /**
+     * @return the threads alive at the time of the dump, in the order reported by the VM
+     */
+    public List<ThreadInfo> threads() {
+        return threads;
+    }
+
+    static CompletableFuture<ThreadDump> createAsync(VirtualMachineImpl vm, Set<Option> options) {
+        boolean lineTables = options.contains(Option.LINE_TABLES);
+        boolean frames = lineTables || options.contains(Option.FRAMES);
+        return vm.allThreadsAsync().thenCompose(threads -> {
+            List<CompletableFuture<ThreadInfo>> infos = new ArrayList<>(threads.size());
+            // all the commands are sent here, the replies are processed as they arrive
+            for (ThreadReference thread : threads) {
+                infos.add(threadInfoAsync((ThreadReferenceImpl) thread, frames));
+            }
+            return CompletableFuture.allOf(infos.toArray(new CompletableFuture<?>[0])).thenCompose(__ -> {
+                List<ThreadInfo> result = new ArrayList<>(infos.size());
+                for (CompletableFuture<ThreadInfo> info : infos) {
+                    ThreadInfo threadInfo = info.join();
+                    if (threadInfo != null) {
+                        result.add(threadInfo);
+                    }
+                }
+                ThreadDump dump = new ThreadDump(result);
+                if (lineTables) {
+                    return prefetchLineTables(result).thenApply(___ -> dump);
+                }
+                return CompletableFuture.completedFuture(dump);
+            });
+        });
+    }
+
+    private static CompletableFuture<ThreadInfo> threadInfoAsync(ThreadReferenceImpl thread, boolean withFrames) {
+        CompletableFuture<String> name = orNullIfThreadGone(thread.nameAsync());
+        CompletableFuture<JDWP.ThreadReference.Status> status = orNullIfThreadGone(thread.jdwpStatusAsync());
+        CompletableFuture<List<StackFrame>> frames = withFrames
+                ? thread.framesAsync().exceptionally(throwable -> {
+                    throwable = AsyncUtils.unwrap(throwable);
+                    if (throwable instanceof IncompatibleThreadStateException || isThreadGone(throwable)) {
+                        return List.of();
+                    }
+                    throw new CompletionException(throwable);
+                })
+                : CompletableFuture.completedFuture(List.of());
+        return CompletableFuture.allOf(name, status, frames).thenApply(__ -> {
+            JDWP.ThreadReference.Status s = status.join();
+            if (name.join() == null || s == null) {
+                // the thread has terminated in the meantime
+                return null;
+            }
+            boolean suspended = (s.suspendStatus & ThreadReferenceImpl.SUSPEND_STATUS_SUSPENDED) != 0;
+            return new ThreadInfo(thread, name.join(), s.threadStatus, suspended, frames.join());
+        });
+    }
+
+    private static <T> CompletableFuture<T> orNullIfThreadGone(CompletableFuture<T> future) {
+        return future.exceptionally(throwable -> {
+            if (isThreadGone(throwable)) {
+                return null;
+            }
+            throw new CompletionException(AsyncUtils.unwrap(throwable));
+        });
+    }
+
+    private static boolean isThreadGone(Throwable throwable) {
+        throwable = AsyncUtils.unwrap(throwable);
+        return throwable instanceof ObjectCollectedException ||
+                JDWPException.isOfType(throwable, JDWP.Error.INVALID_THREAD, JDWP.Error.INVALID_OBJECT);
+    }
+
+    private static CompletableFuture<Void> prefetchLineTables(List<ThreadInfo> threads) {
+        // methods are identified by the declaring type and the method id
+        Map<ReferenceType, Set<Long>> seen = new HashMap<>();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (ThreadInfo info : threads) {
+            for (StackFrame frame : info.frames) {
+                LocationImpl location = (LocationImpl) frame.location();
+                if (seen.computeIfAbsent(location.declaringType(), t -> new HashSet<>()).add(location.methodRef())) {
+                    futures.add(location.methodAsync()
+                            .thenCompose(m -> ((MethodImpl) m).prefetchLineTable())
+                            .exceptionally(e -> null));
+                }
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+}
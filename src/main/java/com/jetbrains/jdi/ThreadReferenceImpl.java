@@ -374,7 +374,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl
         return myStatus;
     }
 
-    private CompletableFuture<JDWP.ThreadReference.Status> jdwpStatusAsync() {
+    CompletableFuture<JDWP.ThreadReference.Status> jdwpStatusAsync() {
         LocalCache snapshot = localCache;
         JDWP.ThreadReference.Status myStatus = snapshot.status;
         if (myStatus != null) {
@@ -604,7 +604,7 @@ public class ThreadReferenceImpl extends ObjectReferenceImpl
         }
     }
 
-    private synchronized CompletableFuture<List<StackFrame>> privateFramesAsync(int start, int length) {
+    private CompletableFuture<List<StackFrame>> privateFramesAsync(int start, int length) {
         LocalCache snapshot = localCache;
         try {
             List<StackFrame> frames = getCachedFrames(start, length, snapshot);
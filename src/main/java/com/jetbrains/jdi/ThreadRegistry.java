@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ThreadReference;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.request.EventRequest;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The live platform threads, kept up to date with internal thread start and death requests,
+ * so that {@link VirtualMachineImpl#allThreads()} does not send AllThreads every time.
+ * <p>
+ * The registry is seeded with a full fetch and reconciled with another one when it is
+ * queried after the reconcile interval, the query does not wait for it. The events received
+ * while a fetch is in flight are applied on top of its result. Thread names are cached until
+ * the next reconciliation, since a running thread may rename itself.
+ */
+class ThreadRegistry {
+    private final VirtualMachineImpl vm;
+    private final Tracer tracer;
+    private final long reconcileIntervalNanos;
+    private final List<EventRequest> requests = new ArrayList<>();
+    // completed when the thread start and death requests are enabled
+    private volatile CompletableFuture<Void> enabled = null;
+
+    // synchronized (this)
+    private Set<ThreadReference> threads = null;
+    private List<ThreadReference> threadList = null;
+    private final Map<ThreadReference, String> names = new HashMap<>();
+    private CompletableFuture<List<ThreadReference>> fetch = null;
+    private final Set<ThreadReference> startedDuringFetch = new HashSet<>();
+    private final Set<ThreadReference> diedDuringFetch = new HashSet<>();
+    private long lastFetch;
+
+    /**
+     * @param vm the VM to send the commands to, only by {@link #start}, {@link #stop},
+     *           {@link #threadNamesAsync} and {@link #fetchThreadsAsync}
+     */
+    ThreadRegistry(VirtualMachineImpl vm, Tracer tracer, long reconcileIntervalMillis) {
+        this.vm = vm;
+        this.tracer = tracer;
+        this.reconcileIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reconcileIntervalMillis);
+    }
+
+    /**
+     * Must be called after the registry is published to the event handler,
+     * the events may arrive before the requests are known to be enabled.
+     */
+    void start() {
+        EventRequestManagerImpl erm = vm.getInternalEventRequestManager();
+        requests.add(erm.createThreadStartRequest());
+        requests.add(erm.createThreadDeathRequest());
+        List<CompletableFuture<Void>> enables = new ArrayList<>(requests.size());
+        for (EventRequest request : requests) {
+            // AllThreads does not return virtual threads either
+            ((EventRequestManagerImpl.ThreadLifecycleEventRequestImpl) request).addPlatformThreadsOnlyFilter();
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            enables.add(erm.setEnabledAsync(request, true));
+        }
+        enabled = CompletableFuture.allOf(enables.toArray(new CompletableFuture<?>[0]));
+        enabled.whenComplete((r, throwable) -> {
+            if (throwable != null) {
+                tracer.trace(VirtualMachine.TRACE_EVENTS, () ->
+                        "Thread tracking requests failed, fetching all threads on every query: " +
+                        AsyncUtils.unwrap(throwable));
+            }
+        });
+        // sent after the requests, so no thread is missed
+        reconcile();
+    }
+
+    /**
+     * @return true if the events keep the registry up to date
+     */
+    private boolean isTracking() {
+        CompletableFuture<Void> e = enabled;
+        return e != null && e.isDone() && !e.isCompletedExceptionally();
+    }
+
+    void stop() {
+        vm.getInternalEventRequestManager().deleteEventRequests(requests);
+    }
+
+    CompletableFuture<List<ThreadReference>> allThreadsAsync() {
+        List<ThreadReference> current = currentThreads();
+        if (current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        // the seeding fetch failed or has not completed yet, or the events are missed
+        return reconcile();
+    }
+
+    /**
+     * Answers without waiting, for the synchronous callers which may run on the thread
+     * processing the replies of a fetch. Starts the reconciliation if it is due.
+     *
+     * @return null if the registry is not seeded yet or the events are missed
+     */
+    synchronized List<ThreadReference> currentThreads() {
+        if (threads == null || !isTracking()) {
+            return null;
+        }
+        if (System.nanoTime() - lastFetch >= reconcileIntervalNanos) {
+            reconcile();
+        }
+        if (threadList == null) {
+            threadList = List.copyOf(threads);
+        }
+        return threadList;
+    }
+
+    /**
+     * @return the names of the current threads, null if some are not cached
+     */
+    synchronized Map<ThreadReference, String> currentNames() {
+        List<ThreadReference> current = currentThreads();
+        if (current == null || !names.keySet().containsAll(current)) {
+            return null;
+        }
+        Map<ThreadReference, String> res = new LinkedHashMap<>(current.size());
+        for (ThreadReference thread : current) {
+            res.put(thread, names.get(thread));
+        }
+        return res;
+    }
+
+    /**
+     * Returns the names of the live threads, fetching the ones not cached yet with pipelined
+     * commands. The thread groups of the new threads are fetched along, the thread mirrors
+     * keep them.
+     */
+    CompletableFuture<Map<ThreadReference, String>> threadNamesAsync() {
+        return allThreadsAsync().thenCompose(live -> {
+            Map<ThreadReference, CompletableFuture<String>> futures = new LinkedHashMap<>();
+            synchronized (this) {
+                for (ThreadReference thread : live) {
+                    String name = names.get(thread);
+                    if (name != null) {
+                        futures.put(thread, CompletableFuture.completedFuture(name));
+                        continue;
+                    }
+                    ThreadReferenceImpl impl = (ThreadReferenceImpl) thread;
+                    impl.threadGroupAsync();
+                    futures.put(thread, JDWP.ThreadReference.Name.processAsync(vm, impl)
+                            .thenApply(r -> r.threadName)
+                            // terminated and collected meanwhile
+                            .exceptionally(e -> null));
+                }
+            }
+            return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+                Map<ThreadReference, String> res = new LinkedHashMap<>(futures.size());
+                synchronized (this) {
+                    futures.forEach((thread, name) -> {
+                        if (name.join() != null) {
+                            res.put(thread, name.join());
+                            if (threads != null && threads.contains(thread)) {
+                                names.put(thread, name.join());
+                            }
+                        }
+                    });
+                }
+                return res;
+            });
+        });
+    }
+
+    synchronized void threadStarted(ThreadReference thread) {
+        if (fetch != null) {
+            startedDuringFetch.add(thread);
+            diedDuringFetch.remove(thread);
+        }
+        if (threads != null && threads.add(thread)) {
+            threadList = null;
+        }
+    }
+
+    synchronized void threadDied(ThreadReference thread) {
+        if (fetch != null) {
+            diedDuringFetch.add(thread);
+            startedDuringFetch.remove(thread);
+        }
+        if (threads != null && threads.remove(thread)) {
+            threadList = null;
+        }
+        names.remove(thread);
+    }
+
+    private synchronized CompletableFuture<List<ThreadReference>> reconcile() {
+        if (fetch != null) {
+            return fetch;
+        }
+        CompletableFuture<List<ThreadReference>> res = new CompletableFuture<>();
+        fetch = res;
+        lastFetch = System.nanoTime();
+        startedDuringFetch.clear();
+        diedDuringFetch.clear();
+        fetchThreadsAsync().whenComplete((r, throwable) -> {
+            if (throwable != null) {
+                synchronized (this) {
+                    fetch = null;
+                }
+                res.completeExceptionally(AsyncUtils.unwrap(throwable));
+            } else {
+                res.complete(fetched(r));
+            }
+        });
+        return res;
+    }
+
+    // overridden in tests
+    CompletableFuture<? extends ThreadReference[]> fetchThreadsAsync() {
+        return JDWP.VirtualMachine.AllThreads.processAsync(vm).thenApply(r -> r.threads);
+    }
+
+    private synchronized List<ThreadReference> fetched(ThreadReference[] fetchedThreads) {
+        Set<ThreadReference> current = new LinkedHashSet<>(Arrays.asList(fetchedThreads));
+        current.removeAll(diedDuringFetch);
+        current.addAll(startedDuringFetch);
+        Set<ThreadReference> previous = threads;
+        tracer.trace(VirtualMachine.TRACE_OBJREFS, () -> "Reconciled thread registry (count = " + current.size() +
+                ", drift = " + (previous == null ? 0 : symmetricDifference(previous, current)) + ")");
+        threads = current;
+        threadList = List.copyOf(current);
+        names.clear();
+        fetch = null;
+        return threadList;
+    }
+
+    private static int symmetricDifference(Set<ThreadReference> a, Set<ThreadReference> b) {
+        int res = 0;
+        for (ThreadReference thread : a) {
+            if (!b.contains(thread)) {
+                res++;
+            }
+        }
+        for (ThreadReference thread : b) {
+            if (!a.contains(thread)) {
+                res++;
+            }
+        }
+        return res;
+    }
+}
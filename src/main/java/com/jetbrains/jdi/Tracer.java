@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import java.util.function.Supplier;
+
+/**
+ * The debug trace of a component, see {@link com.sun.jdi.VirtualMachine#setDebugTraceMode}.
+ * The bookkeeping components take it instead of the whole VM.
+ */
+@FunctionalInterface
+interface Tracer {
+    Tracer NONE = (flag, message) -> {
+    };
+
+    /**
+     * Prints the message if tracing of the flag is enabled.
+     */
+    void trace(int flag, Supplier<String> message);
+}
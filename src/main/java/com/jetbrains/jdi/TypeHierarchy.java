@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2026 JetBrains s.r.o.
+ *
+ * This program is free software; you can redistribute and/or modify it under
+ * the terms of the GNU General Public License v2 with Classpath Exception.
+ * The text of the license is available in the file LICENSE.TXT.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See LICENSE.TXT for more details.
+ *
+ * You may contact JetBrains s.r.o. at Na Hřebenech II 1718/10, 140 00 Prague,
+ * Czech Republic or at legal@jetbrains.com.
+ */
+
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ClassType;
+import com.sun.jdi.InterfaceType;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VirtualMachine;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Superclass and interface edges of all loaded classes and interfaces, with the
+ * reverse edges to find subclasses, subinterfaces and implementors locally.
+ * <p>
+ * Built on the first query by fetching the superclass and the interfaces of all
+ * loaded types with pipelined commands, then kept up to date with class prepare
+ * and unload notifications. The fetched supertypes are also cached by the type
+ * mirrors, so {@code isAssignableTo} and {@code allInterfaces} do not go remote.
+ */
+class TypeHierarchy {
+    private final VirtualMachineImpl vm;
+
+    // synchronized (this)
+    private final Map<ReferenceTypeImpl, List<ReferenceTypeImpl>> supertypes = new HashMap<>();
+    private final Map<ReferenceTypeImpl, Set<ReferenceTypeImpl>> subtypes = new HashMap<>();
+    // the classes indexed before they were prepared, with their superclass edge only
+    private final Set<ReferenceTypeImpl> incomplete = new HashSet<>();
+    private CompletableFuture<Void> built = null;
+    // the types being indexed after the build
+    private final Set<CompletableFuture<Void>> pending = new HashSet<>();
+
+    TypeHierarchy(VirtualMachineImpl vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * Returns the loaded types which directly extend or implement the type and are of the given kind.
+     */
+    <T extends ReferenceType> CompletableFuture<List<T>> directSubtypesAsync(ReferenceTypeImpl type, Class<T> kind) {
+        return ensureUpToDate().thenApply(__ -> directSubtypes(type, kind));
+    }
+
+    /**
+     * Same as {@link #directSubtypesAsync} without waiting: the synchronous callers may run on
+     * the thread which processes the replies the index waits for. Starts the build if needed.
+     *
+     * @return null if the index is not built or some update is not applied yet
+     */
+    <T extends ReferenceType> List<T> directSubtypesIfUpToDate(ReferenceTypeImpl type, Class<T> kind) {
+        CompletableFuture<Void> b = ensureBuilt();
+        synchronized (this) {
+            if (!b.isDone() || b.isCompletedExceptionally() || !pending.isEmpty()) {
+                return null;
+            }
+        }
+        return directSubtypes(type, kind);
+    }
+
+    private synchronized <T extends ReferenceType> List<T> directSubtypes(ReferenceTypeImpl type, Class<T> kind) {
+        Set<ReferenceTypeImpl> direct = subtypes.get(type);
+        if (direct == null) {
+            return List.of();
+        }
+        List<T> res = new ArrayList<>(direct.size());
+        for (ReferenceTypeImpl subtype : direct) {
+            if (kind.isInstance(subtype)) {
+                res.add(kind.cast(subtype));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns all the loaded classes and interfaces assignable to the type, except the type itself.
+     */
+    CompletableFuture<List<ReferenceType>> allSubtypesAsync(ReferenceTypeImpl type) {
+        return ensureUpToDate().thenApply(__ -> {
+            synchronized (this) {
+                Set<ReferenceType> res = new LinkedHashSet<>();
+                Deque<ReferenceTypeImpl> queue = new ArrayDeque<>();
+                queue.add(type);
+                while (!queue.isEmpty()) {
+                    for (ReferenceTypeImpl subtype : subtypes.getOrDefault(queue.poll(), Set.of())) {
+                        if (res.add(subtype)) {
+                            queue.add(subtype);
+                        }
+                    }
+                }
+                return new ArrayList<>(res);
+            }
+        });
+    }
+
+    /**
+     * Checks the supertypes of the source as {@link ReferenceTypeImpl#isAssignableTo} does,
+     * without querying the target VM.
+     *
+     * @return null if the hierarchy was not built or misses some supertype of the source
+     */
+    synchronized Boolean isSubtype(ReferenceTypeImpl source, ReferenceTypeImpl destination) {
+        if (built == null || !built.isDone() || built.isCompletedExceptionally()) {
+            return null;
+        }
+        Set<ReferenceTypeImpl> seen = new HashSet<>();
+        Deque<ReferenceTypeImpl> queue = new ArrayDeque<>();
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            ReferenceTypeImpl type = queue.poll();
+            if (type.equals(destination)) {
+                return true;
+            }
+            List<ReferenceTypeImpl> direct = supertypes.get(type);
+            if (direct == null || incomplete.contains(type)) {
+                // an array, or not prepared when indexed
+                return null;
+            }
+            for (ReferenceTypeImpl supertype : direct) {
+                if (seen.add(supertype)) {
+                    queue.add(supertype);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void track(CompletableFuture<Void> update) {
+        synchronized (this) {
+            pending.add(update);
+        }
+        update.whenComplete((r, e) -> {
+            synchronized (this) {
+                pending.remove(update);
+            }
+        });
+    }
+
+    /**
+     * Completes when the index is built and the updates started so far are applied.
+     */
+    private CompletableFuture<Void> ensureUpToDate() {
+        return ensureBuilt().thenCompose(__ -> {
+            CompletableFuture<?>[] updates;
+            synchronized (this) {
+                updates = pending.toArray(new CompletableFuture<?>[0]);
+            }
+            return CompletableFuture.allOf(updates);
+        });
+    }
+
+    private synchronized CompletableFuture<Void> ensureBuilt() {
+        if (built == null || built.isCompletedExceptionally()) {
+            if ((vm.traceFlags & VirtualMachine.TRACE_REFTYPES) != 0) {
+                vm.printTrace("Building type hierarchy");
+            }
+            built = vm.allClassesAsync().thenCompose(types ->
+                    CompletableFuture.allOf(types.stream()
+                            .map(t -> indexAsync((ReferenceTypeImpl) t))
+                            .toArray(CompletableFuture[]::new)));
+        }
+        return built;
+    }
+
+    private synchronized boolean isStarted() {
+        return built != null;
+    }
+
+    /**
+     * A new type was prepared, its interfaces are available now.
+     */
+    void typePrepared(ReferenceTypeImpl type) {
+        if (isStarted()) {
+            track(indexAsync(type));
+        }
+    }
+
+    synchronized void typeRemoved(ReferenceTypeImpl type) {
+        removeEdges(type);
+        // the subtypes of an unloaded type are unloaded as well
+        subtypes.remove(type);
+    }
+
+    // synchronized (this)
+    private void removeEdges(ReferenceTypeImpl type) {
+        incomplete.remove(type);
+        List<ReferenceTypeImpl> removed = supertypes.remove(type);
+        if (removed != null) {
+            for (ReferenceTypeImpl supertype : removed) {
+                Set<ReferenceTypeImpl> direct = subtypes.get(supertype);
+                if (direct != null) {
+                    direct.remove(type);
+                    if (direct.isEmpty()) {
+                        subtypes.remove(supertype);
+                    }
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Void> indexAsync(ReferenceTypeImpl type) {
+        if (type instanceof ClassTypeImpl) {
+            ClassTypeImpl clazz = (ClassTypeImpl) type;
+            // both commands are sent before any reply is awaited,
+            // interfaces are not available until the class is prepared
+            CompletableFuture<ClassType> superclass = clazz.superclassAsync().exceptionally(e -> null);
+            CompletableFuture<List<InterfaceType>> interfaces = clazz.interfacesAsync().exceptionally(e -> null);
+            return superclass.thenCombine(interfaces, (sup, ifaces) -> {
+                List<ReferenceTypeImpl> edges = new ArrayList<>(ifaces != null ? ifaces.size() + 1 : 1);
+                if (sup != null) {
+                    edges.add((ReferenceTypeImpl) sup);
+                }
+                if (ifaces != null) {
+                    ifaces.forEach(i -> edges.add((ReferenceTypeImpl) i));
+                    add(type, edges, true);
+                } else if (sup != null) {
+                    // loaded but not prepared, the interfaces are added on prepare
+                    add(type, edges, false);
+                }
+                return null;
+            });
+        }
+        if (type instanceof InterfaceTypeImpl) {
+            return ((InterfaceTypeImpl) type).superinterfacesAsync()
+                    .<Void>thenApply(ifaces -> {
+                        List<ReferenceTypeImpl> edges = new ArrayList<>(ifaces.size());
+                        ifaces.forEach(i -> edges.add((ReferenceTypeImpl) i));
+                        add(type, edges, true);
+                        return null;
+                    })
+                    .exceptionally(e -> null);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private synchronized void add(ReferenceTypeImpl type, List<ReferenceTypeImpl> edges, boolean complete) {
+        // the type may have been unloaded while its supertypes were being fetched
+        if (!vm.isCachedType(type)) {
+            return;
+        }
+        // the supertypes of a type never change, even on redefinition
+        if (supertypes.containsKey(type)) {
+            if (!complete || !incomplete.contains(type)) {
+                return;
+            }
+            removeEdges(type);
+        }
+        supertypes.put(type, edges);
+        if (!complete) {
+            incomplete.add(type);
+        }
+        for (ReferenceTypeImpl supertype : edges) {
+            subtypes.computeIfAbsent(supertype, k -> new LinkedHashSet<>()).add(type);
+        }
+    }
+}
@@ -71,6 +71,11 @@ class VMState {
     private Cache cache = null;               // synchronized (this)
     private static final Cache markerCache = new Cache();
 
+    // Replaced as a whole, read without locking. Cleared on any resume.
+    private volatile SuspensionSnapshot suspensionSnapshot = null;
+    // Incremented on any resume, so that late captures are not stored
+    private int suspensionEpoch = 0;          // synchronized (this)
+
     private void disableCache() {
         synchronized (this) {
             cache = null;
@@ -150,6 +155,19 @@ class VMState {
             }
             disableCache();
         }
+        suspensionEpoch++;
+        if (suspensionSnapshot != null) {
+            if ((vm.traceFlags & VirtualMachine.TRACE_OBJREFS) != 0) {
+                vm.printTrace("Discarding suspension snapshot");
+            }
+            suspensionSnapshot = null;
+        }
+        if (resumingThread == null) {
+            // no frames left to keep metadata for
+            vm.metadataCache().unpinAll();
+        } else {
+            vm.metadataCache().unpin(resumingThread);
+        }
         processVMAction(new VMAction(vm, resumingThread, VMAction.VM_NOT_SUSPENDED));
     }
 
@@ -230,6 +248,28 @@ class VMState {
         return listeners.stream().anyMatch(ref -> listener.equals(ref.get()));
     }
 
+    synchronized int suspensionEpoch() {
+        return suspensionEpoch;
+    }
+
+    SuspensionSnapshot suspensionSnapshot() {
+        return suspensionSnapshot;
+    }
+
+    /**
+     * Merges the captured values into the current snapshot, unless something
+     * was resumed since the capture started.
+     * @return the current snapshot, or the captured one if it is already stale
+     */
+    synchronized SuspensionSnapshot addToSuspensionSnapshot(int epoch, SuspensionSnapshot captured) {
+        if (epoch != suspensionEpoch) {
+            return captured;
+        }
+        SuspensionSnapshot current = suspensionSnapshot;
+        suspensionSnapshot = current == null ? captured : current.merge(captured);
+        return suspensionSnapshot;
+    }
+
     List<ThreadReference> allThreads() {
         List<ThreadReference> threads = null;
         try {
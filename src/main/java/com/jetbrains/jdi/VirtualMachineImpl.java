@@ -51,9 +51,11 @@ import java.lang.ref.SoftReference;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.sun.jdi.ModuleReference;
@@ -98,8 +100,20 @@ public class VirtualMachineImpl extends MirrorImpl
     // be set synchronously
     private final Map<Long, ReferenceType> typesByID = new HashMap<>(300);
     private final Map<String, Object> typesBySignature = new HashMap<>(300);
+    // the keys of typesBySignature, sorted to find the types by name prefix
+    private final NavigableSet<String> sortedSignatures = new TreeSet<>();
     private volatile boolean retrievedAllTypes = false;
 
+    // source name and path -> types, built on first use
+    private final SourceIndex sourceIndex = new SourceIndex(this);
+    private final TypeHierarchy typeHierarchy = new TypeHierarchy(this);
+    private final ResolvedTypes resolvedTypes = new ResolvedTypes(this);
+
+    private final InvocationScheduler invocationScheduler = new InvocationScheduler(this);
+    private final ObjectGraphReader objectGraphReader = new ObjectGraphReader(this);
+    // null unless thread tracking is enabled
+    private volatile ThreadRegistry threadRegistry = null;
+
     private Map<Long, ModuleReference> modulesByID;
 
     // For other languages support
@@ -143,6 +157,25 @@ public class VirtualMachineImpl extends MirrorImpl
     // coordinates state changes and corresponding listener notifications
     private final VMState state = new VMState(this);
 
+    private final Tracer tracer = (flag, message) -> {
+        if ((traceFlags & flag) != 0) {
+            printTrace(message.get());
+        }
+    };
+
+    // type and method metadata, evicted when over budget
+    private final MetadataCache metadataCache = new MetadataCache(tracer,
+            useSoftReferences ? MetadataCache.DEFAULT_BUDGET : MetadataCache.UNLIMITED);
+
+    // chunk sizes of array commands, adapted to the link
+    private final ArrayChunking arrayChunking = new ArrayChunking(tracer, this::name);
+
+    // shares repeatedly received signatures and names
+    private final StringDecodingCache stringDecodingCache = new StringDecodingCache();
+
+    // how java.lang.String stores its contents, computed on the first ranged string read
+    private CompletableFuture<StringReferenceImpl.Layout> stringLayout = null; // synchronized (this)
+
     private final Object initMonitor = new Object();
     private boolean initComplete = false;
     private boolean shutdown = false;
@@ -322,6 +355,110 @@ public class VirtualMachineImpl extends MirrorImpl
         return classesBySignature(JNITypeParser.typeNameToSignature(className));
     }
 
+    /**
+     * Returns the loaded classes and interfaces with names matching the pattern,
+     * where {@code *} matches any sequence of characters, e.g. {@code com.acme.*}.
+     * Only the types with names starting with the part of the pattern before
+     * the first {@code *} are examined.
+     */
+    @SuppressWarnings("unused")
+    public List<ReferenceType> classesByPattern(String pattern) {
+        validateVM();
+        return filterByPattern(classesBySignaturePrefix(classSignaturePrefix(patternPrefix(pattern))), pattern);
+    }
+
+    public CompletableFuture<List<ReferenceType>> classesByPatternAsync(String pattern) {
+        validateVM();
+        return classesBySignaturePrefixAsync(classSignaturePrefix(patternPrefix(pattern)))
+                .thenApply(types -> filterByPattern(types, pattern));
+    }
+
+    private static String patternPrefix(String pattern) {
+        int star = pattern.indexOf('*');
+        return star < 0 ? pattern : pattern.substring(0, star);
+    }
+
+    private static List<ReferenceType> filterByPattern(List<ReferenceType> types, String pattern) {
+        Pattern regex = Pattern.compile(Arrays.stream(pattern.split("\\*", -1))
+                                                .map(Pattern::quote)
+                                                .collect(Collectors.joining(".*")));
+        List<ReferenceType> res = new ArrayList<>(types.size());
+        for (ReferenceType type : types) {
+            if (regex.matcher(type.name()).matches()) {
+                res.add(type);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the loaded classes and interfaces declared in the package,
+     * not including its subpackages.
+     */
+    @SuppressWarnings("unused")
+    public List<ReferenceType> classesInPackage(String packageName) {
+        validateVM();
+        String prefix = packageSignaturePrefix(packageName);
+        return filterByPackage(classesBySignaturePrefix(prefix), prefix);
+    }
+
+    public CompletableFuture<List<ReferenceType>> classesInPackageAsync(String packageName) {
+        validateVM();
+        String prefix = packageSignaturePrefix(packageName);
+        return classesBySignaturePrefixAsync(prefix).thenApply(types -> filterByPackage(types, prefix));
+    }
+
+    private static String packageSignaturePrefix(String packageName) {
+        return classSignaturePrefix(packageName.isEmpty() ? "" : packageName + ".");
+    }
+
+    private static List<ReferenceType> filterByPackage(List<ReferenceType> types, String prefix) {
+        List<ReferenceType> res = new ArrayList<>(types.size());
+        for (ReferenceType type : types) {
+            if (type.signature().indexOf('/', prefix.length()) < 0) {
+                res.add(type);
+            }
+        }
+        return res;
+    }
+
+    private static String classSignaturePrefix(String namePrefix) {
+        return "L" + namePrefix.replace('.', '/');
+    }
+
+    /**
+     * Returns the loaded types with signatures starting with the prefix,
+     * retrieving all the loaded types first if not done yet.
+     */
+    List<ReferenceType> classesBySignaturePrefix(String prefix) {
+        if (!retrievedAllTypes) {
+            retrieveAllClasses();
+        }
+        return cachedTypesBySignaturePrefix(prefix);
+    }
+
+    CompletableFuture<List<ReferenceType>> classesBySignaturePrefixAsync(String prefix) {
+        CompletableFuture<Void> res = retrievedAllTypes
+                ? CompletableFuture.completedFuture(null)
+                : retrieveAllClassesAsync();
+        return res.thenApply(__ -> cachedTypesBySignaturePrefix(prefix));
+    }
+
+    private List<ReferenceType> cachedTypesBySignaturePrefix(String prefix) {
+        List<ReferenceType> types = new ArrayList<>();
+        synchronized (state) {
+            for (String signature : sortedSignatures.subSet(prefix, prefix + Character.MAX_VALUE)) {
+                Object value = typesBySignature.get(signature);
+                if (value instanceof ReferenceType[]) {
+                    Collections.addAll(types, (ReferenceType[]) value);
+                } else {
+                    types.add((ReferenceType) value);
+                }
+            }
+        }
+        return types;
+    }
+
     List<ReferenceType> classesBySignature(String signature) {
         validateVM();
         if (retrievedAllTypes) {
@@ -331,6 +468,14 @@ public class VirtualMachineImpl extends MirrorImpl
         }
     }
 
+    CompletableFuture<List<ReferenceType>> classesBySignatureAsync(String signature) {
+        validateVM();
+        if (retrievedAllTypes) {
+            return CompletableFuture.completedFuture(findReferenceTypes(signature));
+        }
+        return retrieveClassesBySignatureAsync(signature).thenApply(Collections::unmodifiableList);
+    }
+
     public List<ReferenceType> allClasses() {
         validateVM();
 
@@ -360,6 +505,70 @@ public class VirtualMachineImpl extends MirrorImpl
         });
     }
 
+    /**
+     * Returns the loaded types compiled from a source file with the given name
+     * in any stratum, including the files listed in SourceDebugExtension
+     * (e.g. sources of inlined functions).
+     * The first call fetches the source info of all loaded classes.
+     */
+    @SuppressWarnings("unused")
+    public List<ReferenceType> classesBySourceName(String sourceName) {
+        return AsyncUtils.join(classesBySourceNameAsync(sourceName));
+    }
+
+    public CompletableFuture<List<ReferenceType>> classesBySourceNameAsync(String sourceName) {
+        validateVM();
+        return sourceIndex.typesBySourceNameAsync(sourceName);
+    }
+
+    /**
+     * Same as {@link #classesBySourceName(String)} but matches the source path.
+     */
+    @SuppressWarnings("unused")
+    public List<ReferenceType> classesBySourcePath(String sourcePath) {
+        return AsyncUtils.join(classesBySourcePathAsync(sourcePath));
+    }
+
+    public CompletableFuture<List<ReferenceType>> classesBySourcePathAsync(String sourcePath) {
+        validateVM();
+        return sourceIndex.typesBySourcePathAsync(sourcePath);
+    }
+
+    SourceIndex sourceIndex() {
+        return sourceIndex;
+    }
+
+    /**
+     * Returns all the loaded classes and interfaces assignable to the type, except the type itself.
+     * The first call fetches the supertypes of all loaded classes.
+     */
+    @SuppressWarnings("unused")
+    public List<ReferenceType> allSubtypes(ReferenceType type) {
+        return AsyncUtils.join(allSubtypesAsync(type));
+    }
+
+    public CompletableFuture<List<ReferenceType>> allSubtypesAsync(ReferenceType type) {
+        validateVM();
+        validateMirror(type);
+        return typeHierarchy.allSubtypesAsync((ReferenceTypeImpl) type);
+    }
+
+    TypeHierarchy typeHierarchy() {
+        return typeHierarchy;
+    }
+
+    ResolvedTypes resolvedTypes() {
+        return resolvedTypes;
+    }
+
+    /**
+     * Returns the scheduler which overlaps method invocations on different threads.
+     */
+    @SuppressWarnings("unused")
+    public InvocationScheduler invocationScheduler() {
+        return invocationScheduler;
+    }
+
     /**
      * Performs an action for each loaded type.
      */
@@ -381,6 +590,156 @@ public class VirtualMachineImpl extends MirrorImpl
         }
     }
 
+    /**
+     * Kinds of type metadata that can be requested with {@link #prefetch}.
+     */
+    public enum MetadataKind {
+        FIELDS,
+        METHODS,
+        SOURCE_NAME,
+        SOURCE_DEBUG_EXTENSION,
+        /** Line tables of all methods, implies {@link #METHODS} */
+        LINE_TABLES
+    }
+
+    /**
+     * Fetches the metadata of all the types in one burst of pipelined commands
+     * and fills the caches, so that later accesses do not need round trips.
+     * The returned future completes when all replies are processed,
+     * errors for particular types are ignored.
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<Void> prefetch(Collection<? extends ReferenceType> types,
+                                            EnumSet<MetadataKind> kinds) {
+        validateVM();
+        if (kinds.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[types.size()];
+        int i = 0;
+        for (ReferenceType type : types) {
+            validateMirror(type);
+            futures[i++] = ((ReferenceTypeImpl) type).prefetch(kinds);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Returns the runtime types of the objects, fetching the ones not yet known
+     * with pipelined commands. The types are remembered by the mirrors.
+     * Objects collected in the meantime are left out of the result.
+     */
+    @SuppressWarnings("unused")
+    public Map<ObjectReference, ReferenceType> referenceTypes(Collection<? extends ObjectReference> objects) {
+        return AsyncUtils.join(referenceTypesAsync(objects));
+    }
+
+    public CompletableFuture<Map<ObjectReference, ReferenceType>> referenceTypesAsync(
+            Collection<? extends ObjectReference> objects) {
+        validateVM();
+        validateMirrors(objects);
+        Map<ObjectReference, CompletableFuture<ReferenceType>> futures = new LinkedHashMap<>();
+        for (ObjectReference object : objects) {
+            futures.computeIfAbsent(object, o -> ((ObjectReferenceImpl) o).referenceTypeAsync()
+                    .exceptionally(throwable -> {
+                        if (AsyncUtils.unwrap(throwable) instanceof ObjectCollectedException) {
+                            return null;
+                        }
+                        throw new CompletionException(AsyncUtils.unwrap(throwable));
+                    }));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+            Map<ObjectReference, ReferenceType> result = new HashMap<>(futures.size());
+            futures.forEach((object, type) -> {
+                if (type.join() != null) {
+                    result.put(object, type.join());
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Reads the fields of many objects with pipelined commands, static fields
+     * are read once per type. A failure of one object does not fail the others.
+     */
+    @SuppressWarnings("unused")
+    public FieldValues fieldValues(Map<? extends ObjectReference, ? extends List<? extends Field>> fields) {
+        return AsyncUtils.join(fieldValuesAsync(fields));
+    }
+
+    public CompletableFuture<FieldValues> fieldValuesAsync(
+            Map<? extends ObjectReference, ? extends List<? extends Field>> fields) {
+        validateVM();
+        validateMirrors(fields.keySet());
+        fields.values().forEach(this::validateMirrors);
+        return FieldValues.fetchAsync(this, fields);
+    }
+
+    /**
+     * Returns the values of the strings, fetched with pipelined commands.
+     */
+    @SuppressWarnings("unused")
+    public Map<StringReference, String> stringValues(Collection<? extends StringReference> strings) {
+        return AsyncUtils.join(stringValuesAsync(strings));
+    }
+
+    public CompletableFuture<Map<StringReference, String>> stringValuesAsync(
+            Collection<? extends StringReference> strings) {
+        validateVM();
+        validateMirrors(strings);
+        Map<StringReference, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (StringReference string : strings) {
+            // the values are cached by the mirrors, only the missing ones are sent
+            futures.computeIfAbsent(string, s -> ((StringReferenceImpl) s).valueAsync());
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+            Map<StringReference, String> result = new HashMap<>(futures.size());
+            futures.forEach((string, value) -> result.put(string, value.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Takes a snapshot of all threads, see {@link ThreadDump}.
+     */
+    @SuppressWarnings("unused")
+    public ThreadDump threadDump(EnumSet<ThreadDump.Option> options) {
+        return AsyncUtils.join(threadDumpAsync(options));
+    }
+
+    @SuppressWarnings("unused")
+    public CompletableFuture<ThreadDump> threadDumpAsync(EnumSet<ThreadDump.Option> options) {
+        validateVM();
+        return ThreadDump.createAsync(this, options);
+    }
+
+    /**
+     * Reads the top frames of the suspended thread with their variables, {@code this} fields
+     * and strings in one burst of pipelined commands, and adds them to the {@link #suspensionSnapshot()}.
+     *
+     * @param frameCount the maximum number of frames from the top of the stack to capture
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<SuspensionSnapshot> captureSuspensionSnapshotAsync(ThreadReference thread,
+                                                                                int frameCount) {
+        validateVM();
+        validateMirror(thread);
+        if (frameCount < 0) {
+            throw new IllegalArgumentException("Negative frame count: " + frameCount);
+        }
+        return SuspensionSnapshot.captureAsync(this, (ThreadReferenceImpl) thread, frameCount);
+    }
+
+    /**
+     * @return the values captured since the last resume, empty if there are none
+     */
+    @SuppressWarnings("unused")
+    public SuspensionSnapshot suspensionSnapshot() {
+        SuspensionSnapshot snapshot = state.suspensionSnapshot();
+        return snapshot != null ? snapshot : SuspensionSnapshot.EMPTY;
+    }
+
     public void
         redefineClasses(Map<? extends ReferenceType, byte[]> classToBytes)
     {
@@ -468,20 +827,114 @@ public class VirtualMachineImpl extends MirrorImpl
         while (it.hasNext()) {
             ReferenceTypeImpl rti = (ReferenceTypeImpl)it.next();
             rti.noticeRedefineClass();
+            sourceIndex.typeRedefined(rti);
+            resolvedTypes.typeRedefined();
         }
     }
 
     public List<ThreadReference> allThreads() {
         validateVM();
+        ThreadRegistry registry = threadRegistry;
+        if (registry != null) {
+            List<ThreadReference> current = registry.currentThreads();
+            if (current != null) {
+                return current;
+            }
+        }
         return state.allThreads();
     }
 
     @SuppressWarnings("unused")
     public CompletableFuture<List<ThreadReference>> allThreadsAsync() {
         validateVM();
+        ThreadRegistry registry = threadRegistry;
+        if (registry != null) {
+            return registry.allThreadsAsync();
+        }
         return state.allThreadsAsync();
     }
 
+    /**
+     * Makes {@link #allThreads()} answer from a registry of live threads kept up to date
+     * with thread start and death events, instead of sending AllThreads on every call
+     * while the VM is running. The registry is reconciled with a full fetch when queried
+     * after the interval.
+     */
+    @SuppressWarnings("unused")
+    public synchronized void enableThreadTracking(long reconcileIntervalMillis) {
+        validateVM();
+        if (reconcileIntervalMillis < 0) {
+            throw new IllegalArgumentException("Negative interval: " + reconcileIntervalMillis);
+        }
+        disableThreadTracking();
+        ThreadRegistry registry = new ThreadRegistry(this, tracer, reconcileIntervalMillis);
+        // published first, the events of the new requests are dispatched to it
+        threadRegistry = registry;
+        registry.start();
+    }
+
+    @SuppressWarnings("unused")
+    public synchronized void disableThreadTracking() {
+        ThreadRegistry registry = threadRegistry;
+        if (registry != null) {
+            threadRegistry = null;
+            registry.stop();
+        }
+    }
+
+    ThreadRegistry threadRegistry() {
+        return threadRegistry;
+    }
+
+    /**
+     * Returns the names of all live threads, {@link #threadNamesAsync} fetches them with
+     * pipelined commands. With thread tracking enabled the names are cached until the
+     * next reconciliation.
+     */
+    @SuppressWarnings("unused")
+    public Map<ThreadReference, String> threadNames() {
+        validateVM();
+        ThreadRegistry registry = threadRegistry;
+        if (registry != null) {
+            Map<ThreadReference, String> cached = registry.currentNames();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Map<ThreadReference, String> result = new LinkedHashMap<>();
+        for (ThreadReference thread : allThreads()) {
+            try {
+                result.put(thread, thread.name());
+            } catch (ObjectCollectedException e) {
+                // terminated and collected meanwhile
+            }
+        }
+        return result;
+    }
+
+    public CompletableFuture<Map<ThreadReference, String>> threadNamesAsync() {
+        validateVM();
+        ThreadRegistry registry = threadRegistry;
+        if (registry != null) {
+            return registry.threadNamesAsync();
+        }
+        return state.allThreadsAsync().thenCompose(threads -> {
+            Map<ThreadReference, CompletableFuture<String>> futures = new LinkedHashMap<>();
+            for (ThreadReference thread : threads) {
+                futures.put(thread, ((ThreadReferenceImpl) thread).nameAsync().exceptionally(e -> null));
+            }
+            return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+                Map<ThreadReference, String> result = new LinkedHashMap<>(futures.size());
+                futures.forEach((thread, name) -> {
+                    if (name.join() != null) {
+                        result.put(thread, name.join());
+                    }
+                });
+                return result;
+            });
+        });
+    }
+
     public List<ThreadGroupReference> topLevelThreadGroups() {
         validateVM();
         return state.topLevelThreadGroups();
@@ -672,6 +1125,69 @@ public class VirtualMachineImpl extends MirrorImpl
         return retValue;
     }
 
+    /**
+     * Returns the instance counts of all loaded types, the most numerous first.
+     */
+    @SuppressWarnings("unused")
+    public List<HeapAnalysis.ClassCount> heapHistogram() {
+        return AsyncUtils.join(heapHistogramAsync());
+    }
+
+    public CompletableFuture<List<HeapAnalysis.ClassCount>> heapHistogramAsync() {
+        validateVM();
+        if (!canGetInstanceInfo()) {
+            throw new UnsupportedOperationException(
+                "target does not support getting instances");
+        }
+        return HeapAnalysis.histogramAsync(this);
+    }
+
+    /**
+     * Returns the shortest chain of referrers from the object to a class object
+     * or a thread, or null if there is none within the limits.
+     */
+    @SuppressWarnings("unused")
+    public List<ObjectReference> rootPath(ObjectReference object, int maxDepth, int maxVisited) {
+        return AsyncUtils.join(rootPathAsync(object, maxDepth, maxVisited));
+    }
+
+    public CompletableFuture<List<ObjectReference>> rootPathAsync(ObjectReference object, int maxDepth, int maxVisited) {
+        validateVM();
+        validateMirror(object);
+        if (!canGetInstanceInfo()) {
+            throw new UnsupportedOperationException(
+                "target does not support getting referring objects");
+        }
+        return HeapAnalysis.rootPathAsync(this, (ObjectReferenceImpl) object, maxDepth, maxVisited);
+    }
+
+    /**
+     * Copies the object subgraph reachable from the object into a local {@link ObjectGraph}.
+     * <p>
+     * If the thread is suspended by an event, a helper class is defined in the target VM
+     * and invoked in the thread with {@link ClassType#INVOKE_SINGLE_THREADED}, so the whole
+     * graph is transferred at once. Otherwise, or if the invocation is not possible, the graph
+     * is read over JDWP with one burst of commands per level. The helper cannot read the fields
+     * of classes in modules not open to it, such graphs are read over JDWP as well, and so are
+     * the later graphs rooted at objects of the same type.
+     *
+     * @param thread   the thread to run the helper in, or null to read over JDWP only
+     * @param maxDepth objects farther from the object are {@link ObjectGraph#TRUNCATED}
+     * @param maxSize  the approximate limit of the serialized size in bytes
+     */
+    @SuppressWarnings("unused")
+    public ObjectGraph objectGraph(ThreadReference thread, ObjectReference object, int maxDepth, int maxSize) {
+        validateVM();
+        validateMirror(object);
+        if (thread != null) {
+            validateMirror(thread);
+        }
+        if (maxDepth < 0 || maxSize < 0) {
+            throw new IllegalArgumentException("Invalid limits: maxDepth = " + maxDepth + ", maxSize = " + maxSize);
+        }
+        return objectGraphReader.read(thread, object, maxDepth, maxSize);
+    }
+
     public void dispose() {
         validateVM();
         shutdown = true;
@@ -897,25 +1413,82 @@ public class VirtualMachineImpl extends MirrorImpl
         }
     }
 
+    /**
+     * Disables eviction from the metadata caches of this and all VMs created later.
+     */
     public void disableSoftReferences() {
         useSoftReferences = false;
+        metadataCache.setBudget(MetadataCache.UNLIMITED);
+    }
+
+    /**
+     * Sets the estimated memory, in bytes, the cached type and method metadata may occupy.
+     */
+    @SuppressWarnings("unused")
+    public void setMetadataCacheBudget(long bytes) {
+        metadataCache.setBudget(bytes);
     }
 
-    <T> SoftReference<T> createSoftReference(T object) {
-        if (useSoftReferences) {
-            return new SoftReference<>(object);
+    @SuppressWarnings("unused")
+    public MetadataCache.Statistics getMetadataCacheStatistics(MetadataCache.Category category) {
+        return metadataCache.statistics(category);
+    }
+
+    MetadataCache metadataCache() {
+        return metadataCache;
+    }
+
+    ArrayChunking arrayChunking() {
+        return arrayChunking;
+    }
+
+    StringDecodingCache stringDecodingCache() {
+        return stringDecodingCache;
+    }
+
+    synchronized CompletableFuture<StringReferenceImpl.Layout> stringLayoutAsync(ReferenceTypeImpl stringType) {
+        if (stringLayout == null) {
+            stringLayout = StringReferenceImpl.Layout.ofAsync(this, stringType)
+                    .exceptionally(throwable -> {
+                        traceStringLayoutFailure(throwable);
+                        return StringReferenceImpl.Layout.UNKNOWN;
+                    });
         }
-        else {
-            return new HardSoftReference<>(object);
+        return stringLayout;
+    }
+
+    /**
+     * Same as {@link #stringLayoutAsync} with sync commands on the calling thread,
+     * the layout is resolved again if an async resolution is still in flight.
+     */
+    StringReferenceImpl.Layout stringLayout(ReferenceTypeImpl stringType) {
+        CompletableFuture<StringReferenceImpl.Layout> known;
+        synchronized (this) {
+            known = stringLayout;
+        }
+        if (known != null && known.isDone()) {
+            return known.join();
+        }
+        StringReferenceImpl.Layout layout;
+        try {
+            layout = StringReferenceImpl.Layout.of(this, stringType);
+        } catch (VMDisconnectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            traceStringLayoutFailure(e);
+            layout = StringReferenceImpl.Layout.UNKNOWN;
+        }
+        synchronized (this) {
+            if (stringLayout == null) {
+                stringLayout = CompletableFuture.completedFuture(layout);
+            }
         }
+        return layout;
     }
 
-    // simple SoftReference implementation that works as a hard reference
-    private static class HardSoftReference<T> extends SoftReference<T> {
-        T hardRef;
-        public HardSoftReference(T referent) {
-            super(referent);
-            hardRef = referent;
+    private void traceStringLayoutFailure(Throwable throwable) {
+        if ((traceFlags & TRACE_OBJREFS) != 0) {
+            printTrace("Cannot read the layout of strings: " + AsyncUtils.unwrap(throwable));
         }
     }
 
@@ -1000,6 +1573,7 @@ public class VirtualMachineImpl extends MirrorImpl
 
     void cacheTypeBySignature(ReferenceTypeImpl type, String signature) {
       synchronized (state) {
+        sortedSignatures.add(signature);
         typesBySignature.merge(signature, type, (oldValue, newValue) -> {
             if (oldValue instanceof ReferenceType[]) {
                 ReferenceType[] oldArray = (ReferenceType[]) oldValue;
@@ -1027,6 +1601,23 @@ public class VirtualMachineImpl extends MirrorImpl
             toRemove.removeAll(retrieveClassesBySignature(signature));
         }
         removeReferenceTypes(signature, toRemove);
+        // outside of the state lock, the index locks it when adding types
+        for (ReferenceType type : toRemove) {
+            sourceIndex.typeRemoved((ReferenceTypeImpl) type);
+            typeHierarchy.typeRemoved((ReferenceTypeImpl) type);
+            resolvedTypes.typeRemoved((ReferenceTypeImpl) type);
+            metadataCache.removeOwner((ReferenceTypeImpl) type);
+            objectGraphReader.typeRemoved((ReferenceTypeImpl) type);
+        }
+    }
+
+    /**
+     * Returns true if the type is known and was not unloaded.
+     */
+    boolean isCachedType(ReferenceTypeImpl type) {
+        synchronized (state) {
+            return typesByID.get(type.ref()) == type;
+        }
     }
 
     private void removeReferenceTypes(String signature, List<ReferenceType> toRemove) {
@@ -1044,6 +1635,7 @@ public class VirtualMachineImpl extends MirrorImpl
         switch (referenceTypes.size()) {
             case 0:
                 typesBySignature.remove(signature);
+                sortedSignatures.remove(signature);
                 break;
             case 1:
                 typesBySignature.put(signature, referenceTypes.get(0));
@@ -1197,7 +1789,19 @@ public class VirtualMachineImpl extends MirrorImpl
         } catch (JDWPException exc) {
             throw exc.toJDIException();
         }
+        return retrievedClassesBySignature(signature, cinfos);
+    }
+
+    private CompletableFuture<List<ReferenceType>> retrieveClassesBySignatureAsync(String signature) {
+        if ((vm.traceFlags & VirtualMachine.TRACE_REFTYPES) != 0) {
+            vm.printTrace("Retrieving matching ReferenceTypes, sig=" + signature);
+        }
+        return JDWP.VirtualMachine.ClassesBySignature.processAsync(vm, signature)
+                .thenApply(r -> retrievedClassesBySignature(signature, r.classes));
+    }
 
+    private List<ReferenceType> retrievedClassesBySignature(String signature,
+                                                           JDWP.VirtualMachine.ClassesBySignature.ClassInfo[] cinfos) {
         int count = cinfos.length;
         List<ReferenceType> list = new ArrayList<>(count);
 
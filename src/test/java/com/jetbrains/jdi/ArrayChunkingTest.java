@@ -0,0 +1,96 @@
+package com.jetbrains.jdi;
+
+import com.sun.jdi.VMOutOfMemoryException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayChunkingTest {
+    private static final long FAST = 1_000_000L;
+    private static final long MEDIUM = 100_000_000L;
+    private static final long SLOW = 2_000_000_000L;
+
+    private final ArrayChunking chunking = new ArrayChunking(Tracer.NONE, () -> "OpenJDK 64-Bit Server VM");
+
+    @Test
+    void testGrowsWhileFaster() {
+        int size = chunking.chunkSize(false, JDWP.Tag.INT);
+        assertEquals(32_768, size);
+        chunking.chunkCompleted(false, JDWP.Tag.INT, size, MEDIUM);
+        assertEquals(2 * size, chunking.chunkSize(false, JDWP.Tag.INT));
+
+        // the same time for twice the elements is faster, keep growing
+        chunking.chunkCompleted(false, JDWP.Tag.INT, 2 * size, MEDIUM);
+        assertEquals(4 * size, chunking.chunkSize(false, JDWP.Tag.INT));
+    }
+
+    @Test
+    void testKeepsBetterSize() {
+        int size = chunking.chunkSize(false, JDWP.Tag.INT);
+        chunking.chunkCompleted(false, JDWP.Tag.INT, size, SLOW);
+        assertEquals(size / 2, chunking.chunkSize(false, JDWP.Tag.INT));
+
+        // the larger size is known to be slower per element
+        chunking.chunkCompleted(false, JDWP.Tag.INT, size / 2, MEDIUM);
+        assertEquals(size / 2, chunking.chunkSize(false, JDWP.Tag.INT));
+    }
+
+    @Test
+    void testIgnoresTails() {
+        int size = chunking.chunkSize(false, JDWP.Tag.INT);
+        chunking.chunkCompleted(false, JDWP.Tag.INT, size / 3, MEDIUM);
+        assertEquals(size, chunking.chunkSize(false, JDWP.Tag.INT));
+    }
+
+    @Test
+    void testSlowChunkHalves() {
+        int size = chunking.chunkSize(false, JDWP.Tag.BYTE);
+        int inFlight = chunking.maxInFlight(false, JDWP.Tag.BYTE);
+        chunking.chunkCompleted(false, JDWP.Tag.BYTE, size, SLOW);
+        assertEquals(size / 2, chunking.chunkSize(false, JDWP.Tag.BYTE));
+        assertEquals(inFlight + 1, chunking.maxInFlight(false, JDWP.Tag.BYTE));
+    }
+
+    @Test
+    void testInFlightBounds() {
+        for (int i = 0; i < 20; i++) {
+            chunking.chunkCompleted(false, JDWP.Tag.LONG, chunking.chunkSize(false, JDWP.Tag.LONG), FAST);
+        }
+        assertEquals(8, chunking.maxInFlight(false, JDWP.Tag.LONG));
+        for (int i = 0; i < 20; i++) {
+            chunking.chunkCompleted(false, JDWP.Tag.LONG, chunking.chunkSize(false, JDWP.Tag.LONG), MEDIUM);
+        }
+        assertEquals(2, chunking.maxInFlight(false, JDWP.Tag.LONG));
+    }
+
+    @Test
+    void testReferenceReadsStayUnderLimit() {
+        for (int i = 0; i < 10; i++) {
+            chunking.chunkCompleted(false, JDWP.Tag.OBJECT, chunking.chunkSize(false, JDWP.Tag.OBJECT), FAST);
+        }
+        assertEquals(32_768, chunking.chunkSize(false, JDWP.Tag.OBJECT));
+        // arrays share the limit of objects
+        assertEquals(32_768, chunking.chunkSize(false, JDWP.Tag.ARRAY));
+    }
+
+    @Test
+    void testFailureLowersCeiling() {
+        int size = chunking.chunkSize(true, JDWP.Tag.INT);
+        assertTrue(chunking.chunkFailed(true, JDWP.Tag.INT, size, new VMOutOfMemoryException()));
+        assertEquals(size / 2, chunking.chunkSize(true, JDWP.Tag.INT));
+        for (int i = 0; i < 10; i++) {
+            chunking.chunkCompleted(true, JDWP.Tag.INT, chunking.chunkSize(true, JDWP.Tag.INT), FAST);
+        }
+        assertEquals(size / 2, chunking.chunkSize(true, JDWP.Tag.INT));
+        // the get chunks are not affected
+        assertEquals(size, chunking.chunkSize(false, JDWP.Tag.INT));
+    }
+
+    @Test
+    void testOtherFailuresNotRetried() {
+        assertFalse(chunking.chunkFailed(false, JDWP.Tag.INT, 32_768, new IllegalStateException()));
+        assertFalse(chunking.chunkFailed(false, JDWP.Tag.INT, ArrayChunking.MIN_CHUNK_SIZE,
+                new VMOutOfMemoryException()));
+        assertEquals(32_768, chunking.chunkSize(false, JDWP.Tag.INT));
+    }
+}
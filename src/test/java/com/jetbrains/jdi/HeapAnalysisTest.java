@@ -0,0 +1,45 @@
+package com.jetbrains.jdi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeapAnalysisTest {
+    @Test
+    void testLongSetAdd() {
+        HeapAnalysis.LongSet set = new HeapAnalysis.LongSet();
+        assertTrue(set.add(1));
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertFalse(set.add(1));
+        assertFalse(set.add(Long.MAX_VALUE));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void testLongSetGrows() {
+        HeapAnalysis.LongSet set = new HeapAnalysis.LongSet();
+        // the ids of the target VM are often sequential
+        for (long id = 1; id <= 10_000; id++) {
+            assertTrue(set.add(id));
+        }
+        assertEquals(10_000, set.size());
+        for (long id = 1; id <= 10_000; id++) {
+            assertFalse(set.add(id));
+        }
+        assertEquals(10_000, set.size());
+    }
+
+    @Test
+    void testLongSetCollidingIds() {
+        HeapAnalysis.LongSet set = new HeapAnalysis.LongSet();
+        // ids differing in the high bits only
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(set.add(id << 32));
+        }
+        for (long id = 1; id <= 1000; id++) {
+            assertFalse(set.add(id << 32));
+        }
+        assertEquals(1000, set.size());
+    }
+}
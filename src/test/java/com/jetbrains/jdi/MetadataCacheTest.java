@@ -0,0 +1,157 @@
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ThreadReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataCacheTest {
+    private final List<String> traces = new ArrayList<>();
+    private final MetadataCache cache = new MetadataCache((flag, message) -> traces.add(message.get()), 1000);
+
+    private static ReferenceTypeImpl type(long ref) {
+        // the owners are only compared by their ids
+        return new ClassTypeImpl(null, ref);
+    }
+
+    private MetadataCache.Entry<String> put(ReferenceTypeImpl owner, String value, long size) {
+        return cache.put(MetadataCache.Category.FIELDS, owner, value, size);
+    }
+
+    private String get(MetadataCache.Entry<String> entry) {
+        return cache.get(entry, MetadataCache.Category.FIELDS);
+    }
+
+    @Test
+    void testEvictsOverBudget() {
+        MetadataCache.Entry<String> first = put(type(1), "first", 400);
+        MetadataCache.Entry<String> second = put(type(2), "second", 400);
+        MetadataCache.Entry<String> third = put(type(3), "third", 400);
+
+        // down to the low watermark, the oldest first
+        assertNull(get(first));
+        assertEquals("second", get(second));
+        assertEquals("third", get(third));
+        MetadataCache.Statistics statistics = cache.statistics(MetadataCache.Category.FIELDS);
+        assertEquals(1, statistics.evictions());
+        assertEquals(2, statistics.entries());
+        assertEquals(800, statistics.size());
+        assertEquals(List.of("Evicted 1 metadata cache entries, size = 800, budget = 1000"), traces);
+    }
+
+    @Test
+    void testRecentlyReadSurvives() {
+        MetadataCache.Entry<String> first = put(type(1), "first", 400);
+        MetadataCache.Entry<String> second = put(type(2), "second", 400);
+        assertEquals("first", get(first));
+        put(type(3), "third", 400);
+
+        assertEquals("first", get(first));
+        assertNull(get(second));
+    }
+
+    @Test
+    void testLargestEvictedFirst() {
+        MetadataCache.Entry<String> small = put(type(1), "small", 100);
+        MetadataCache.Entry<String> large = put(type(2), "large", 500);
+        MetadataCache.Entry<String> other = put(type(3), "other", 100);
+        put(type(4), "fourth", 400);
+
+        assertEquals("small", get(small));
+        assertNull(get(large));
+        assertEquals("other", get(other));
+        assertEquals(1, cache.statistics(MetadataCache.Category.FIELDS).evictions());
+    }
+
+    @Test
+    void testMethodEntriesEvictedWithMethods() {
+        ReferenceTypeImpl owner = type(1);
+        cache.put(MetadataCache.Category.METHODS, owner, "methods", 300);
+        MetadataCache.Entry<String> lineTable = cache.put(MetadataCache.Category.LINE_TABLE, owner, "lines", 100);
+        MetadataCache.Entry<String> otherLineTable =
+                cache.put(MetadataCache.Category.LINE_TABLE, type(2), "other lines", 100);
+        MetadataCache.Entry<String> fields = put(type(3), "fields", 450);
+        // a second chance for the largest entry
+        assertEquals("fields", get(fields));
+        put(type(4), "fourth", 100);
+
+        assertNull(cache.get(lineTable, MetadataCache.Category.LINE_TABLE));
+        assertEquals("other lines", cache.get(otherLineTable, MetadataCache.Category.LINE_TABLE));
+        assertEquals(1, cache.statistics(MetadataCache.Category.METHODS).evictions());
+        assertEquals(1, cache.statistics(MetadataCache.Category.LINE_TABLE).evictions());
+    }
+
+    @Test
+    void testPinnedNotEvicted() {
+        ThreadReference thread = TestMirrors.thread("main");
+        ReferenceTypeImpl pinned = type(1);
+        cache.pin(thread, pinned);
+        MetadataCache.Entry<String> first = put(pinned, "first", 600);
+        MetadataCache.Entry<String> second = put(pinned, "second", 600);
+        assertEquals("first", get(first));
+        assertEquals("second", get(second));
+
+        MetadataCache.Entry<String> other = put(type(2), "other", 100);
+        assertNull(get(other));
+
+        cache.unpin(thread);
+        put(type(3), "third", 10);
+        MetadataCache.Statistics statistics = cache.statistics(MetadataCache.Category.FIELDS);
+        assertTrue(statistics.size() <= 900);
+        assertEquals(3, statistics.evictions());
+    }
+
+    @Test
+    void testPinsPerThread() {
+        ThreadReference main = TestMirrors.thread("main");
+        ThreadReference worker = TestMirrors.thread("worker");
+        ReferenceTypeImpl shared = type(1);
+        ReferenceTypeImpl mainOnly = type(2);
+        cache.pin(main, shared);
+        cache.pin(main, mainOnly);
+        cache.pin(worker, shared);
+        MetadataCache.Entry<String> sharedEntry = put(shared, "shared", 450);
+        MetadataCache.Entry<String> mainEntry = put(mainOnly, "main", 450);
+
+        // the worker still has a frame of the shared type
+        cache.unpin(main);
+        put(type(3), "third", 200);
+        assertEquals("shared", get(sharedEntry));
+        assertNull(get(mainEntry));
+
+        cache.unpinAll();
+        cache.setBudget(0);
+        assertNull(get(sharedEntry));
+    }
+
+    @Test
+    void testRemoveOwner() {
+        ReferenceTypeImpl owner = type(1);
+        MetadataCache.Entry<String> first = put(owner, "first", 100);
+        MetadataCache.Entry<String> second = put(owner, "second", 100);
+        MetadataCache.Entry<String> other = put(type(2), "other", 100);
+
+        cache.removeOwner(owner);
+        assertNull(get(first));
+        assertNull(get(second));
+        assertEquals("other", get(other));
+        assertEquals(100, cache.statistics(MetadataCache.Category.FIELDS).size());
+    }
+
+    @Test
+    void testReplace() {
+        ReferenceTypeImpl owner = type(1);
+        MetadataCache.Entry<String> old = put(owner, "old", 300);
+        MetadataCache.Entry<String> replacement =
+                cache.replace(old, MetadataCache.Category.FIELDS, owner, "new", 300);
+
+        assertNull(get(old));
+        assertEquals("new", get(replacement));
+        MetadataCache.Statistics statistics = cache.statistics(MetadataCache.Category.FIELDS);
+        assertEquals(1, statistics.entries());
+        assertEquals(300, statistics.size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.jetbrains.jdi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectGraphTest {
+    @SuppressWarnings("unused")
+    private static class Base {
+        int shadowed = 1;
+        String name = "base";
+    }
+
+    @SuppressWarnings("unused")
+    private static class Item extends Base {
+        int shadowed = 2;
+        Integer boxed = 42;
+        long primitive = 7L;
+        Item next;
+        Object[] array;
+    }
+
+    private static ObjectGraph roundTrip(Object root, int maxDepth, int maxSize) throws IOException {
+        byte[] bytes = ObjectGraphSerializer.serialize(root, maxDepth, maxSize);
+        assertNotNull(bytes);
+        return ObjectGraph.decode(bytes);
+    }
+
+    @Test
+    void testFields() throws IOException {
+        ObjectGraph graph = roundTrip(new Item(), 10, 1 << 16);
+        assertTrue(graph.isInjected());
+        ObjectGraph.Node item = (ObjectGraph.Node) graph.root();
+        assertEquals(Item.class.getName(), item.typeName());
+        Map<String, Object> fields = item.fields();
+        // the subclass field hides the superclass one
+        assertEquals(2, fields.get("shadowed"));
+        assertEquals("base", fields.get("name"));
+        assertEquals(7L, fields.get("primitive"));
+        assertNull(fields.get("next"));
+    }
+
+    @Test
+    void testBoxedReferenceIsObject() throws IOException {
+        ObjectGraph graph = roundTrip(new Item(), 10, 1 << 16);
+        // the same shape as read over JDWP
+        ObjectGraph.Node boxed = (ObjectGraph.Node) ((ObjectGraph.Node) graph.root()).fields().get("boxed");
+        assertEquals("java.lang.Integer", boxed.typeName());
+        assertEquals(Map.of("value", 42), boxed.fields());
+    }
+
+    @Test
+    void testCycle() throws IOException {
+        Item first = new Item();
+        Item second = new Item();
+        first.next = second;
+        second.next = first;
+        ObjectGraph graph = roundTrip(first, 10, 1 << 16);
+        ObjectGraph.Node root = (ObjectGraph.Node) graph.root();
+        ObjectGraph.Node next = (ObjectGraph.Node) root.fields().get("next");
+        assertSame(root, next.fields().get("next"));
+    }
+
+    @Test
+    void testArrays() throws IOException {
+        Item item = new Item();
+        item.array = new Object[]{new int[]{1, 2, 3}, "s", null, item};
+        ObjectGraph graph = roundTrip(item, 10, 1 << 16);
+        ObjectGraph.Node root = (ObjectGraph.Node) graph.root();
+        ObjectGraph.Node array = (ObjectGraph.Node) root.fields().get("array");
+        assertTrue(array.isArray());
+        assertEquals("java.lang.Object[4]", array.toString());
+        ObjectGraph.Node ints = (ObjectGraph.Node) array.elements().get(0);
+        assertEquals("int[]", ints.typeName());
+        assertEquals(List.of(1, 2, 3), ints.elements());
+        assertEquals("s", array.elements().get(1));
+        assertNull(array.elements().get(2));
+        assertSame(root, array.elements().get(3));
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        Item first = new Item();
+        first.next = new Item();
+        first.next.next = new Item();
+        ObjectGraph graph = roundTrip(first, 2, 1 << 16);
+        ObjectGraph.Node next = (ObjectGraph.Node) ((ObjectGraph.Node) graph.root()).fields().get("next");
+        assertSame(ObjectGraph.TRUNCATED, next.fields().get("next"));
+
+        int[] large = new int[1000];
+        ObjectGraph.Node array = (ObjectGraph.Node) roundTrip(large, 10, 100).root();
+        assertEquals(1000, array.length());
+        assertTrue(array.elements().size() < 1000);
+    }
+
+    @Test
+    void testInaccessibleFields() throws IOException {
+        // java.util is not opened to the unnamed module
+        assertNull(ObjectGraphSerializer.serialize(new ArrayList<>(List.of(1)), 10, 1 << 16));
+    }
+}
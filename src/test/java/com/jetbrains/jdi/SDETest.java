@@ -115,6 +115,13 @@ class SDETest {
         assertNull(sde.getLine("Kotlin", 29));
     }
 
+    @Test
+    void testSharedByContent() {
+        SDE sde = SDE.forExtension(TEST_SMAP);
+        assertSame(sde, SDE.forExtension(new String(TEST_SMAP)));
+        assertEquals(new SDE.LineAndSourcePath(6, A_CLASS), sde.getLine("Kotlin", 27));
+    }
+
     private static String toOSSpecificPath(String unixPath) {
         return unixPath.replace("/", File.separator);
     }
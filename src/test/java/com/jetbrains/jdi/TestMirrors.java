@@ -0,0 +1,32 @@
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ThreadReference;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Mirrors for the tests of the bookkeeping classes, no target VM is connected.
+ */
+final class TestMirrors {
+    private TestMirrors() {
+    }
+
+    /**
+     * A thread which only supports equals, hashCode and toString.
+     */
+    static ThreadReference thread(String name) {
+        return (ThreadReference) Proxy.newProxyInstance(TestMirrors.class.getClassLoader(),
+                new Class<?>[]{ThreadReference.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return name;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
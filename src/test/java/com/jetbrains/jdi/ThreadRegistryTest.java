@@ -0,0 +1,94 @@
+package com.jetbrains.jdi;
+
+import com.sun.jdi.ThreadReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadRegistryTest {
+    private final ThreadReference main = TestMirrors.thread("main");
+    private final ThreadReference worker = TestMirrors.thread("worker");
+    private final ThreadReference started = TestMirrors.thread("started");
+
+    private CompletableFuture<ThreadReference[]> fetch;
+    private int fetches;
+
+    // not started, every query fetches all threads, and no command is sent
+    private final ThreadRegistry registry = new ThreadRegistry(null, Tracer.NONE, 1000) {
+        @Override
+        CompletableFuture<ThreadReference[]> fetchThreadsAsync() {
+            fetches++;
+            fetch = new CompletableFuture<>();
+            return fetch;
+        }
+    };
+
+    @Test
+    void testStartedDuringFetch() {
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        registry.threadStarted(started);
+        fetch.complete(new ThreadReference[]{main, worker});
+        assertEquals(List.of(main, worker, started), threads.join());
+    }
+
+    @Test
+    void testDiedDuringFetch() {
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        registry.threadDied(worker);
+        fetch.complete(new ThreadReference[]{main, worker});
+        assertEquals(List.of(main), threads.join());
+    }
+
+    @Test
+    void testStartedAndDiedDuringFetch() {
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        registry.threadStarted(started);
+        registry.threadDied(started);
+        fetch.complete(new ThreadReference[]{main, started});
+        assertEquals(List.of(main), threads.join());
+    }
+
+    @Test
+    void testEventsBeforeFetchIgnored() {
+        registry.threadDied(main);
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        fetch.complete(new ThreadReference[]{main});
+        assertEquals(List.of(main), threads.join());
+    }
+
+    @Test
+    void testConcurrentQueriesShareFetch() {
+        CompletableFuture<List<ThreadReference>> first = registry.allThreadsAsync();
+        CompletableFuture<List<ThreadReference>> second = registry.allThreadsAsync();
+        assertEquals(1, fetches);
+        fetch.complete(new ThreadReference[]{main});
+        assertEquals(List.of(main), first.join());
+        assertEquals(List.of(main), second.join());
+    }
+
+    @Test
+    void testNotCurrentWithoutEvents() {
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        fetch.complete(new ThreadReference[]{main});
+        threads.join();
+        // the requests were never enabled, the sync callers fall back to AllThreads
+        assertNull(registry.currentThreads());
+        assertNull(registry.currentNames());
+    }
+
+    @Test
+    void testFailedFetchRetried() {
+        CompletableFuture<List<ThreadReference>> threads = registry.allThreadsAsync();
+        fetch.completeExceptionally(new IllegalStateException());
+        assertThrows(CompletionException.class, threads::join);
+
+        threads = registry.allThreadsAsync();
+        assertEquals(2, fetches);
+        fetch.complete(new ThreadReference[]{main});
+        assertEquals(List.of(main), threads.join());
+    }
+}